@@ -3,44 +3,89 @@ package minespy;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 
+import minespy.colorproviders.IBlockColorProvider;
 import minespy.nbt.*;
 
 public final class Chunk implements IChunk {
 
+	// section arrays that are copied, not referenced
+	private static final String[] SECTION_ARRAYS = { "Blocks", "Add" };
+
+	/**
+	 * The parts of a chunk tag that are used to construct a chunk.
+	 */
+	public static final TagProjection PROJECTION = TagProjection.of(
+			"Level/Sections/*/{Y,Blocks,Add,Data,BlockLight,SkyLight}", "Level/Biomes", "Level/HeightMap");
+
+	private static final int SECTION_VOLUME = 16 * 16 * 16;
+
+	// shared by all sections that are not in the chunk tag; never written to
+	private static final short[] EMPTY_BLOCKS = new short[SECTION_VOLUME];
+	private static final byte[] EMPTY_NIBBLES = new byte[SECTION_VOLUME / 2];
+
+	// after the empty section arrays, which it uses
 	public static final Chunk BLANK = new Chunk();
 
-	private short[] m_blocks = new short[16 * 16 * 256];
-	private byte[] m_data = new byte[16 * 16 * 256];
-	private byte[] m_blocklight = new byte[16 * 16 * 256];
-	private byte[] m_skylight = new byte[16 * 16 * 256];
+	// per section (y / 16) arrays, indexed by (y % 16) * 256 + z * 16 + x; the nibble arrays are as in the chunk tag,
+	// with two values per byte (low nibble first)
+	private final short[][] m_blocks = new short[16][];
+	private final byte[][] m_data = new byte[16][];
+	private final byte[][] m_blocklight = new byte[16][];
+	private final byte[][] m_skylight = new byte[16][];
 	private byte[] m_biomes;
 	private int[] m_heightmap;
+	private volatile ColumnSummary m_summary = null;
 
 	public Chunk() {
 		m_biomes = new byte[16 * 16];
 		m_heightmap = new int[16 * 16];
 		Arrays.fill(m_biomes, (byte) -1);
+		fillEmptySections();
 	}
 
-	public Chunk(Tag root_) {
-		Tag level = root_.child("Level");
-		try {
-			m_biomes = level.get("Biomes");
-		} catch (NoSuchElementException e) {
-			m_biomes = new byte[16 * 16];
-			Arrays.fill(m_biomes, (byte) -1);
+	/**
+	 * Construct and summarise a chunk from a chunk tag, then give the section arrays of the tag back to a pool. The tag
+	 * must not be used afterwards.
+	 * 
+	 * @param cp
+	 *            See <code>ColumnSummary</code>.
+	 * @param alphas
+	 *            See <code>ColumnSummary</code>.
+	 */
+	public Chunk(Tag root_, ArrayPool pool, IBlockColorProvider cp, int[] alphas) {
+		this(root_, cp, alphas);
+		for (Tag t : root_.child("Level").child("Sections")) {
+			for (String name : SECTION_ARRAYS) {
+				try {
+					pool.recycle(t.<byte[]> get(name));
+				} catch (NoSuchElementException e) {
+					// nothing to do
+				}
+			}
 		}
+	}
 
-		try {
-			m_heightmap = level.get("HeightMap");
-		} catch (NoSuchElementException e) {
-			m_heightmap = new int[16 * 16];
-			// TODO precompute heightmap if not in file (is this even necessary?)
-			System.out.println("*** Ben: write the on-chunk-load heightmap computation! ***");
-		}
+	public Chunk(Tag root_) {
+		this(root_, null, null);
+	}
+
+	/**
+	 * Construct a chunk from a chunk tag and summarise its columns.
+	 * 
+	 * @param cp
+	 *            See <code>ColumnSummary</code>.
+	 * @param alphas
+	 *            See <code>ColumnSummary</code>.
+	 */
+	public Chunk(Tag root_, IBlockColorProvider cp, int[] alphas) {
+		Tag level = root_.child("Level");
+		m_biomes = readBiomes(level);
+		m_heightmap = readHeightMap(level);
 
+		fillEmptySections();
 		for (Tag t : level.child("Sections")) {
 			byte section_y = t.get("Y");
+			if (section_y < 0 || section_y >= 16) continue;
 			byte[] section_blocks = t.get("Blocks");
 			byte[] section_add = null;
 			try {
@@ -48,33 +93,84 @@ public final class Chunk implements IChunk {
 			} catch (NoSuchElementException e) {
 				// nothing to do
 			}
-			byte[] section_data = t.get("Data");
-			byte[] section_blocklight = t.get("BlockLight");
-			byte[] section_skylight = t.get("SkyLight");
-			// unpack / copy section to offset in chunk
-			int offset = section_y * 16 * 16 * 16;
-			for (int i = 0; i < section_blocks.length; i++) {
-				m_blocks[i + offset] = (short) (section_blocks[i] & 0xFF);
+			// unpack / copy blocks, the rest is used as is
+			short[] blocks = new short[SECTION_VOLUME];
+			int n = Math.min(section_blocks.length, SECTION_VOLUME);
+			for (int i = 0; i < n; i++) {
+				blocks[i] = (short) (section_blocks[i] & 0xFF);
 			}
 			if (section_add != null) {
-				for (int i = 0; i < section_blocks.length; i++) {
-					m_blocks[i + offset] += ((short) nibble4(section_add, i)) << 8;
+				section_add = nibbles(section_add);
+				for (int i = 0; i < n; i++) {
+					blocks[i] |= nibble(section_add, i) << 8;
 				}
 			}
-			for (int i = 0; i < section_blocks.length; i++) {
-				m_data[i + offset] = nibble4(section_data, i);
-			}
-			for (int i = 0; i < section_blocks.length; i++) {
-				m_blocklight[i + offset] = nibble4(section_blocklight, i);
-			}
-			for (int i = 0; i < section_blocks.length; i++) {
-				m_skylight[i + offset] = nibble4(section_skylight, i);
-			}
+			m_blocks[section_y] = blocks;
+			m_data[section_y] = nibbles(t.<byte[]> get("Data"));
+			m_blocklight[section_y] = nibbles(t.<byte[]> get("BlockLight"));
+			m_skylight[section_y] = nibbles(t.<byte[]> get("SkyLight"));
+		}
+
+		m_summary = new ColumnSummary(this, cp, alphas);
+		if (m_heightmap == null) {
+			// not in the file, work it out
+			m_heightmap = m_summary.toHeightMap();
+		}
+	}
+
+	public final ColumnSummary getColumnSummary() {
+		ColumnSummary s = m_summary;
+		if (s == null) {
+			// racing threads will just do the same thing
+			s = new ColumnSummary(this, null, null);
+			m_summary = s;
+		}
+		return s;
+	}
+
+	/**
+	 * @return The biomes of a chunk's level tag, or all -1 (unknown) if it has none.
+	 */
+	static byte[] readBiomes(Tag level) {
+		try {
+			return level.get("Biomes");
+		} catch (NoSuchElementException e) {
+			byte[] biomes = new byte[16 * 16];
+			Arrays.fill(biomes, (byte) -1);
+			return biomes;
+		}
+	}
+
+	/**
+	 * @return The height map of a chunk's level tag, or null if it has none.
+	 */
+	static int[] readHeightMap(Tag level) {
+		try {
+			return level.get("HeightMap");
+		} catch (NoSuchElementException e) {
+			return null;
 		}
 	}
 
-	private byte nibble4(byte[] arr, int index) {
-		return (byte) (index % 2 == 0 ? arr[index / 2] & 0x0F : (arr[index / 2] >> 4) & 0x0F);
+	/**
+	 * @return The nibble array, or a copy of the right length if it isn't.
+	 */
+	static byte[] nibbles(byte[] arr) {
+		return arr.length == SECTION_VOLUME / 2 ? arr : Arrays.copyOf(arr, SECTION_VOLUME / 2);
+	}
+
+	static int nibble(byte[] arr, int index) {
+		return (arr[index >> 1] >> ((index & 1) << 2)) & 0x0F;
+	}
+
+	/**
+	 * Point all sections at the shared empty arrays, before the sections that exist are filled in.
+	 */
+	private void fillEmptySections() {
+		Arrays.fill(m_blocks, EMPTY_BLOCKS);
+		Arrays.fill(m_data, EMPTY_NIBBLES);
+		Arrays.fill(m_blocklight, EMPTY_NIBBLES);
+		Arrays.fill(m_skylight, EMPTY_NIBBLES);
 	}
 
 	public final int getBiome(int local_x, int local_z) {
@@ -87,23 +183,23 @@ public final class Chunk implements IChunk {
 
 	public final int getBlock(int local_x, int local_z, int local_y) {
 		if (local_y < 0 || local_y > 255) return 0;
-		return m_blocks[local_y * 16 * 16 + local_z * 16 + local_x];
+		return m_blocks[local_y >> 4][(local_y & 15) << 8 | local_z << 4 | local_x];
 	}
 
 	public final int getData(int local_x, int local_z, int local_y) {
 		if (local_y < 0 || local_y > 255) return 0;
-		return m_data[local_y * 16 * 16 + local_z * 16 + local_x];
+		return nibble(m_data[local_y >> 4], (local_y & 15) << 8 | local_z << 4 | local_x);
 	}
 
 	public final int getBlockLight(int local_x, int local_z, int local_y) {
 		if (local_y < 0 || local_y > 255) return 0;
-		return m_blocklight[local_y * 16 * 16 + local_z * 16 + local_x];
+		return nibble(m_blocklight[local_y >> 4], (local_y & 15) << 8 | local_z << 4 | local_x);
 	}
 
 	public final int getSkyLight(int local_x, int local_z, int local_y) {
 		if (local_y < 0) return 0;
 		if (local_y > 255) return 15;
-		return m_skylight[local_y * 16 * 16 + local_z * 16 + local_x];
+		return nibble(m_skylight[local_y >> 4], (local_y & 15) << 8 | local_z << 4 | local_x);
 	}
 
 }
@@ -0,0 +1,214 @@
+package minespy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Registry of chunk codecs by region file chunk version. Versions 1 (gzip), 2 (zlib), 3 (uncompressed) and 4 (LZ4,
+ * as written by lz4-java's <code>LZ4BlockOutputStream</code>) are built in; others can be added with
+ * <code>register()</code>.
+ */
+public final class ChunkCodecs {
+
+	public static final IChunkCodec GZIP = new GZipCodec();
+	public static final IChunkCodec DEFLATE = new DeflateCodec();
+	public static final IChunkCodec NONE = new NoneCodec();
+	public static final IChunkCodec LZ4 = new LZ4ChunkCodec();
+
+	private static final AtomicReferenceArray<IChunkCodec> m_codecs = new AtomicReferenceArray<IChunkCodec>(256);
+
+	static {
+		register(GZIP);
+		register(DEFLATE);
+		register(NONE);
+		register(LZ4);
+	}
+
+	private ChunkCodecs() {
+
+	}
+
+	/**
+	 * Register a codec, replacing any codec previously registered for the same version.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If the codec's version does not fit in the version byte.
+	 */
+	public static void register(IChunkCodec codec) {
+		int version = codec.getVersion();
+		if (version < 0 || version > 255) throw new IllegalArgumentException("Invalid chunk version " + version);
+		m_codecs.set(version, codec);
+	}
+
+	/**
+	 * @param version
+	 *            A region file chunk version; the signed value of the version byte is accepted too.
+	 * @return The codec for the version, or null if there isn't one.
+	 */
+	public static IChunkCodec get(int version) {
+		return m_codecs.get(version & 0xFF);
+	}
+
+	/**
+	 * @return The codec for the version.
+	 * @throws IOException
+	 *             If there is no codec for the version.
+	 */
+	public static IChunkCodec require(int version) throws IOException {
+		IChunkCodec codec = get(version);
+		if (codec == null) throw new IOException("Unknown version " + version);
+		return codec;
+	}
+
+	/**
+	 * @return The codec with the specified name, or null if there isn't one.
+	 */
+	public static IChunkCodec forName(String name) {
+		for (int i = 0; i < m_codecs.length(); i++) {
+			IChunkCodec codec = m_codecs.get(i);
+			if (codec != null && codec.getName().equalsIgnoreCase(name)) return codec;
+		}
+		return null;
+	}
+
+	private static class GZipCodec implements IChunkCodec {
+
+		@Override
+		public int getVersion() {
+			return RegionFile.VERSION_GZIP;
+		}
+
+		@Override
+		public String getName() {
+			return "gzip";
+		}
+
+		@Override
+		public int decode(ChunkDecompressor dec, byte[] src, int off, int len) throws IOException {
+			// gzip chunks don't occur in practice, so don't bother doing this without a stream
+			InputStream in = openStream(src, off, len);
+			int n = 0;
+			while (true) {
+				byte[] out = dec.outputBuffer(n + 1);
+				int r = in.read(out, n, out.length - n);
+				if (r < 0) break;
+				n += r;
+			}
+			in.close();
+			return n;
+		}
+
+		@Override
+		public int encode(ChunkCompressor comp, byte[] src, int off, int len) throws IOException {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream(len / 2 + 64);
+			GZIPOutputStream out = new GZIPOutputStream(bout);
+			out.write(src, off, len);
+			out.close();
+			byte[] b = bout.toByteArray();
+			System.arraycopy(b, 0, comp.outputBuffer(b.length), 0, b.length);
+			return b.length;
+		}
+
+		@Override
+		public InputStream openStream(byte[] src, int off, int len) throws IOException {
+			return new GZIPInputStream(new ByteArrayInputStream(src, off, len));
+		}
+
+	}
+
+	private static class DeflateCodec implements IChunkCodec {
+
+		@Override
+		public int getVersion() {
+			return RegionFile.VERSION_DEFLATE;
+		}
+
+		@Override
+		public String getName() {
+			return "deflate";
+		}
+
+		@Override
+		public int decode(ChunkDecompressor dec, byte[] src, int off, int len) throws IOException {
+			Inflater inflater = dec.inflater();
+			inflater.reset();
+			inflater.setInput(src, off, len);
+			int n = 0;
+			try {
+				while (!inflater.finished()) {
+					byte[] out = dec.outputBuffer(n + 1);
+					int r = inflater.inflate(out, n, out.length - n);
+					if (r == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+						throw new EOFException("Unexpected end of compressed chunk data");
+					}
+					n += r;
+				}
+			} catch (DataFormatException e) {
+				throw new IOException(e);
+			}
+			return n;
+		}
+
+		@Override
+		public int encode(ChunkCompressor comp, byte[] src, int off, int len) {
+			Deflater deflater = comp.deflater();
+			deflater.reset();
+			deflater.setInput(src, off, len);
+			deflater.finish();
+			int n = 0;
+			while (!deflater.finished()) {
+				byte[] out = comp.outputBuffer(n + 1);
+				n += deflater.deflate(out, n, out.length - n);
+			}
+			return n;
+		}
+
+		@Override
+		public InputStream openStream(byte[] src, int off, int len) {
+			return new InflaterInputStream(new ByteArrayInputStream(src, off, len));
+		}
+
+	}
+
+	private static class NoneCodec implements IChunkCodec {
+
+		@Override
+		public int getVersion() {
+			return RegionFile.VERSION_NONE;
+		}
+
+		@Override
+		public String getName() {
+			return "none";
+		}
+
+		@Override
+		public int decode(ChunkDecompressor dec, byte[] src, int off, int len) {
+			System.arraycopy(src, off, dec.outputBuffer(len), 0, len);
+			return len;
+		}
+
+		@Override
+		public int encode(ChunkCompressor comp, byte[] src, int off, int len) {
+			System.arraycopy(src, off, comp.outputBuffer(len), 0, len);
+			return len;
+		}
+
+		@Override
+		public InputStream openStream(byte[] src, int off, int len) {
+			return new ByteArrayInputStream(src, off, len);
+		}
+
+	}
+
+}
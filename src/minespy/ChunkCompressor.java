@@ -0,0 +1,110 @@
+package minespy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import minespy.nbt.ByteArrayDataOutput;
+import minespy.nbt.Tag;
+
+/**
+ * Reusable chunk payload compression state, the counterpart of <code>ChunkDecompressor</code>. Holds one
+ * <code>Deflater</code>, a buffer to serialise chunk tags into and a growable buffer for the compressed data, so that
+ * writing a chunk does not allocate any of these. Not thread-safe; use <code>get()</code> to obtain the instance
+ * belonging to the current thread.
+ */
+public final class ChunkCompressor {
+
+	private static final ThreadLocal<ChunkCompressor> m_local = new ThreadLocal<ChunkCompressor>() {
+
+		@Override
+		protected ChunkCompressor initialValue() {
+			return new ChunkCompressor();
+		}
+
+	};
+
+	/**
+	 * @return The compressor for the current thread.
+	 */
+	public static ChunkCompressor get() {
+		return m_local.get();
+	}
+
+	private final Deflater m_deflater = new Deflater();
+	private final ByteArrayDataOutput m_nbt = new ByteArrayDataOutput(1 << 17);
+	private byte[] m_out = new byte[4096 * 8];
+
+	public ChunkCompressor() {
+
+	}
+
+	/**
+	 * Set the compression level used from now on.
+	 * 
+	 * @param level
+	 *            A level from 0 to 9, or <code>Deflater.DEFAULT_COMPRESSION</code>.
+	 */
+	public void setLevel(int level) {
+		m_deflater.setLevel(level);
+	}
+
+	/**
+	 * @return The buffer containing the result of the last call to <code>compress()</code>. Only valid until the next
+	 *         call to <code>compress()</code>.
+	 */
+	public byte[] buffer() {
+		return m_out;
+	}
+
+	/**
+	 * Get the buffer for compressed data, growing it if necessary. For codecs; the contents are preserved when
+	 * growing.
+	 * 
+	 * @param size
+	 *            The minimum size required.
+	 * @return A buffer at least <code>size</code> bytes long.
+	 */
+	public byte[] outputBuffer(int size) {
+		if (m_out.length < size) {
+			m_out = Arrays.copyOf(m_out, Math.max(size, m_out.length * 2));
+		}
+		return m_out;
+	}
+
+	/**
+	 * @return The deflater, for codecs.
+	 */
+	public Deflater deflater() {
+		return m_deflater;
+	}
+
+	/**
+	 * Serialise a tag and compress it into <code>buffer()</code>.
+	 * 
+	 * @param version
+	 *            The region file chunk version (compression type).
+	 * @return The length of the compressed data.
+	 * @throws IOException
+	 *             If the version is unknown or the tag cannot be serialised.
+	 */
+	public int compress(int version, Tag root) throws IOException {
+		m_nbt.reset();
+		root.write(m_nbt);
+		return compress(version, m_nbt.buffer(), 0, m_nbt.size());
+	}
+
+	/**
+	 * Compress data into <code>buffer()</code>.
+	 * 
+	 * @param version
+	 *            The region file chunk version (compression type).
+	 * @return The length of the compressed data.
+	 * @throws IOException
+	 *             If the version is unknown or the data cannot be compressed.
+	 */
+	public int compress(int version, byte[] src, int off, int len) throws IOException {
+		return ChunkCodecs.require(version).encode(this, src, off, len);
+	}
+
+}
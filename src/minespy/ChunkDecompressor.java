@@ -0,0 +1,103 @@
+package minespy;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+
+/**
+ * Reusable chunk payload decompression state. Holds one <code>Inflater</code>, a buffer for the compressed payload and
+ * a growable buffer for the decompressed data, so that loading a chunk does not allocate any of these. Not thread-safe;
+ * use <code>get()</code> to obtain the instance belonging to the current thread.
+ */
+public final class ChunkDecompressor {
+
+	private static final ThreadLocal<ChunkDecompressor> m_local = new ThreadLocal<ChunkDecompressor>() {
+
+		@Override
+		protected ChunkDecompressor initialValue() {
+			return new ChunkDecompressor();
+		}
+
+	};
+
+	/**
+	 * @return The decompressor for the current thread.
+	 */
+	public static ChunkDecompressor get() {
+		return m_local.get();
+	}
+
+	private final Inflater m_inflater = new Inflater();
+	// most chunks fit in a few sectors compressed and under 128KB decompressed
+	private byte[] m_in = new byte[4096 * 8];
+	private byte[] m_out = new byte[1 << 17];
+
+	public ChunkDecompressor() {
+
+	}
+
+	/**
+	 * Get the reusable buffer for compressed data, growing it if necessary. The contents are not preserved when
+	 * growing.
+	 * 
+	 * @param size
+	 *            The minimum size required.
+	 * @return A buffer at least <code>size</code> bytes long.
+	 */
+	public byte[] inputBuffer(int size) {
+		if (m_in.length < size) {
+			m_in = new byte[Math.max(size, m_in.length * 2)];
+		}
+		return m_in;
+	}
+
+	/**
+	 * @return The buffer containing the result of the last call to <code>decompress()</code>. Only valid until the
+	 *         next call to <code>decompress()</code>.
+	 */
+	public byte[] buffer() {
+		return m_out;
+	}
+
+	/**
+	 * Get the buffer for decompressed data, growing it if necessary. For codecs; the contents are preserved when
+	 * growing.
+	 * 
+	 * @param size
+	 *            The minimum size required.
+	 * @return A buffer at least <code>size</code> bytes long.
+	 */
+	public byte[] outputBuffer(int size) {
+		if (m_out.length < size) {
+			m_out = Arrays.copyOf(m_out, Math.max(size, m_out.length * 2));
+		}
+		return m_out;
+	}
+
+	/**
+	 * @return The inflater, for codecs.
+	 */
+	public Inflater inflater() {
+		return m_inflater;
+	}
+
+	/**
+	 * Decompress a chunk payload into <code>buffer()</code>.
+	 * 
+	 * @param version
+	 *            The region file chunk version (compression type).
+	 * @param src
+	 *            The array containing the compressed data.
+	 * @param off
+	 *            Offset of the compressed data.
+	 * @param len
+	 *            Length of the compressed data.
+	 * @return The length of the decompressed data.
+	 * @throws IOException
+	 *             If the version is unknown or the data is invalid.
+	 */
+	public int decompress(int version, byte[] src, int off, int len) throws IOException {
+		return ChunkCodecs.require(version).decode(this, src, off, len);
+	}
+
+}
@@ -0,0 +1,156 @@
+package minespy;
+
+import java.util.NoSuchElementException;
+
+import minespy.colorproviders.IBlockColorProvider;
+import minespy.nbt.*;
+
+/**
+ * A chunk stored column by column: all the voxels of one (x, z) column are next to each other, from the bottom up.
+ * Scanning a column, as every shader does from the top down, then walks through memory instead of jumping 256 voxels
+ * per step like <code>Chunk</code>. The columns are only as tall as the highest section in the chunk tag. Built by
+ * transposing the sections as the chunk is decoded, which costs a little more than building a <code>Chunk</code>, so
+ * this only pays off for renders that are dominated by column scans.
+ */
+public final class ColumnChunk implements IChunk {
+
+	// all section arrays are copied, not referenced
+	private static final String[] SECTION_ARRAYS = { "Blocks", "Add", "Data", "BlockLight", "SkyLight" };
+
+	// indexed by (z * 16 + x) * m_height + y; the nibble arrays have two values per byte (low nibble first)
+	private final int m_height;
+	private final short[] m_blocks;
+	private final byte[] m_data;
+	private final byte[] m_blocklight;
+	private final byte[] m_skylight;
+	private final byte[] m_biomes;
+	private final int[] m_heightmap;
+	private volatile ColumnSummary m_summary = null;
+
+	/**
+	 * Construct and summarise a chunk from a chunk tag, then give the section arrays of the tag back to a pool. The tag
+	 * must not be used afterwards.
+	 * 
+	 * @param cp
+	 *            See <code>ColumnSummary</code>.
+	 * @param alphas
+	 *            See <code>ColumnSummary</code>.
+	 */
+	public ColumnChunk(Tag root_, ArrayPool pool, IBlockColorProvider cp, int[] alphas) {
+		this(root_, cp, alphas);
+		for (Tag t : root_.child("Level").child("Sections")) {
+			for (String name : SECTION_ARRAYS) {
+				try {
+					pool.recycle(t.<byte[]> get(name));
+				} catch (NoSuchElementException e) {
+					// nothing to do
+				}
+			}
+		}
+	}
+
+	public ColumnChunk(Tag root_) {
+		this(root_, null, null);
+	}
+
+	/**
+	 * Construct a chunk from a chunk tag and summarise its columns.
+	 * 
+	 * @param cp
+	 *            See <code>ColumnSummary</code>.
+	 * @param alphas
+	 *            See <code>ColumnSummary</code>.
+	 */
+	public ColumnChunk(Tag root_, IBlockColorProvider cp, int[] alphas) {
+		Tag level = root_.child("Level");
+		m_biomes = Chunk.readBiomes(level);
+
+		// columns go up to the top of the highest section
+		int top = 0;
+		for (Tag t : level.child("Sections")) {
+			byte section_y = t.get("Y");
+			if (section_y >= 0 && section_y < 16) top = Math.max(top, section_y + 1);
+		}
+		m_height = top * 16;
+		m_blocks = new short[256 * m_height];
+		m_data = new byte[128 * m_height];
+		m_blocklight = new byte[128 * m_height];
+		m_skylight = new byte[128 * m_height];
+
+		for (Tag t : level.child("Sections")) {
+			byte section_y = t.get("Y");
+			if (section_y < 0 || section_y >= 16) continue;
+			byte[] section_blocks = t.get("Blocks");
+			byte[] section_add = null;
+			try {
+				section_add = Chunk.nibbles(t.<byte[]> get("Add"));
+			} catch (NoSuchElementException e) {
+				// nothing to do
+			}
+			byte[] section_data = Chunk.nibbles(t.<byte[]> get("Data"));
+			byte[] section_blocklight = Chunk.nibbles(t.<byte[]> get("BlockLight"));
+			byte[] section_skylight = Chunk.nibbles(t.<byte[]> get("SkyLight"));
+			// transpose the section into the columns, in source order
+			int n = Math.min(section_blocks.length, 16 * 16 * 16);
+			for (int i = 0; i < n; i++) {
+				int j = (i & 255) * m_height + section_y * 16 + (i >> 8);
+				int block = section_blocks[i] & 0xFF;
+				if (section_add != null) block |= Chunk.nibble(section_add, i) << 8;
+				m_blocks[j] = (short) block;
+				int shift = (j & 1) << 2;
+				m_data[j >> 1] |= Chunk.nibble(section_data, i) << shift;
+				m_blocklight[j >> 1] |= Chunk.nibble(section_blocklight, i) << shift;
+				m_skylight[j >> 1] |= Chunk.nibble(section_skylight, i) << shift;
+			}
+		}
+
+		m_summary = new ColumnSummary(this, cp, alphas);
+		int[] heightmap = Chunk.readHeightMap(level);
+		if (heightmap == null) {
+			// not in the file, work it out
+			heightmap = m_summary.toHeightMap();
+		}
+		m_heightmap = heightmap;
+	}
+
+	public final ColumnSummary getColumnSummary() {
+		ColumnSummary s = m_summary;
+		if (s == null) {
+			// racing threads will just do the same thing
+			s = new ColumnSummary(this, null, null);
+			m_summary = s;
+		}
+		return s;
+	}
+
+	public final int getBiome(int local_x, int local_z) {
+		return m_biomes[local_z * 16 + local_x];
+	}
+
+	public final int getHeight(int local_x, int local_z) {
+		return m_heightmap[local_z * 16 + local_x];
+	}
+
+	public final int getBlock(int local_x, int local_z, int local_y) {
+		if (local_y < 0 || local_y >= m_height) return 0;
+		return m_blocks[(local_z << 4 | local_x) * m_height + local_y];
+	}
+
+	public final int getData(int local_x, int local_z, int local_y) {
+		if (local_y < 0 || local_y >= m_height) return 0;
+		return Chunk.nibble(m_data, (local_z << 4 | local_x) * m_height + local_y);
+	}
+
+	public final int getBlockLight(int local_x, int local_z, int local_y) {
+		if (local_y < 0 || local_y >= m_height) return 0;
+		return Chunk.nibble(m_blocklight, (local_z << 4 | local_x) * m_height + local_y);
+	}
+
+	public final int getSkyLight(int local_x, int local_z, int local_y) {
+		if (local_y > 255) return 15;
+		// missing sections have no light, as in Chunk
+		if (local_y < 0 || local_y >= m_height) return 0;
+		return Chunk.nibble(m_skylight, (local_z << 4 | local_x) * m_height + local_y);
+	}
+
+}
@@ -0,0 +1,134 @@
+package minespy;
+
+import minespy.colorproviders.IBlockColorProvider;
+
+/**
+ * What a top-down scan of each column of a chunk finds, worked out once so that shaders and filters don't have to
+ * rescan the column for every pixel: the highest non-air block, the highest block that isn't transparent (see
+ * <code>Config.isBlockTransparent()</code>), and the highest block whose colour has at least each of a set of alpha
+ * values. Heights are one above the block (0 if there is none), as the shaders use them.
+ */
+public final class ColumnSummary {
+
+	private static final int[] NO_ALPHAS = new int[0];
+
+	private final IBlockColorProvider m_cp;
+	private final int[] m_alphas;
+	// per column, indexed by z * 16 + x
+	private final short[] m_height = new short[256];
+	private final short[] m_solid = new short[256];
+	private final short[][] m_alpha_heights;
+
+	/**
+	 * Summarise a chunk.
+	 * 
+	 * @param c
+	 *            The chunk.
+	 * @param cp_
+	 *            The colour provider to use for alpha values, or null to not summarise alpha values.
+	 * @param alphas_
+	 *            The alpha values (0 to 255) to find the highest block of at least, or null for none.
+	 */
+	public ColumnSummary(IChunk c, IBlockColorProvider cp_, int[] alphas_) {
+		m_cp = cp_;
+		m_alphas = cp_ == null || alphas_ == null ? NO_ALPHAS : alphas_.clone();
+		m_alpha_heights = new short[m_alphas.length][256];
+		Config config = Config.getConfig();
+		for (int z = 0; z < 16; z++) {
+			for (int x = 0; x < 16; x++) {
+				int i = z * 16 + x;
+				int y = 256;
+				while (y > 0 && c.getBlock(x, z, y - 1) == 0) {
+					y--;
+				}
+				m_height[i] = (short) y;
+				while (y > 0 && config.isBlockTransparent(c.getBlock(x, z, y - 1))) {
+					y--;
+				}
+				m_solid[i] = (short) y;
+				if (m_alphas.length > 0) summariseAlphas(c, x, z, i);
+			}
+		}
+	}
+
+	private void summariseAlphas(IChunk c, int x, int z, int i) {
+		int biome = c.getBiome(x, z);
+		// everything above the highest non-air block is air
+		int air = m_cp.getRGB(0, 0, biome) >>> 24;
+		int left = 0;
+		for (int k = 0; k < m_alphas.length; k++) {
+			if (air >= m_alphas[k]) {
+				m_alpha_heights[k][i] = 256;
+			} else {
+				m_alpha_heights[k][i] = 0;
+				left++;
+			}
+		}
+		for (int y = m_height[i]; left > 0 && y-- > 0;) {
+			int alpha = m_cp.getRGB(c.getBlock(x, z, y), c.getData(x, z, y), biome) >>> 24;
+			for (int k = 0; k < m_alphas.length; k++) {
+				if (m_alpha_heights[k][i] == 0 && alpha >= m_alphas[k]) {
+					m_alpha_heights[k][i] = (short) (y + 1);
+					left--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return One above the highest non-air block in the column, or 0 if it is all air.
+	 */
+	public int getHeight(int local_x, int local_z) {
+		return m_height[local_z * 16 + local_x];
+	}
+
+	/**
+	 * @return One above the highest block in the column that isn't transparent, or 0 if there is none.
+	 */
+	public int getSolidHeight(int local_x, int local_z) {
+		return m_solid[local_z * 16 + local_x];
+	}
+
+	/**
+	 * @param cp
+	 *            The colour provider the alpha value is for.
+	 * @param alpha
+	 *            An alpha value.
+	 * @return One above the highest block in the column whose colour has at least the alpha value, 0 if there is
+	 *         none, or -1 if that wasn't summarised (for this colour provider).
+	 */
+	public int getAlphaHeight(IBlockColorProvider cp, int alpha, int local_x, int local_z) {
+		if (cp != m_cp) return -1;
+		for (int k = 0; k < m_alphas.length; k++) {
+			if (m_alphas[k] == alpha) return m_alpha_heights[k][local_z * 16 + local_x];
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The colour provider used for alpha values, or null if they weren't summarised.
+	 */
+	public IBlockColorProvider getColorProvider() {
+		return m_alphas.length == 0 ? null : m_cp;
+	}
+
+	/**
+	 * @return The alpha values that were summarised.
+	 */
+	public int[] getAlphas() {
+		return m_alphas.clone();
+	}
+
+	/**
+	 * @return A height map like the one stored in chunks (one above the highest block that isn't transparent), for
+	 *         chunks that don't have one.
+	 */
+	int[] toHeightMap() {
+		int[] hmap = new int[256];
+		for (int i = 0; i < 256; i++) {
+			hmap[i] = m_solid[i];
+		}
+		return hmap;
+	}
+
+}
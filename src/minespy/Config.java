@@ -14,6 +14,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.zip.CRC32;
 
 import minespy.colorproviders.DataBiomeBlockColorProvider;
 import minespy.colorproviders.DelegatingBlockColorProvider;
@@ -28,6 +29,7 @@ public final class Config {
 	private final String[] blocknames = new String[4096];
 	private final boolean[] blocktransparent = new boolean[4096];
 	private final File mcdir;
+	private final String colordigest;
 
 	private final List<File> saves = new ArrayList<File>();
 
@@ -97,6 +99,8 @@ public final class Config {
 			List<String> mcdirs = new ArrayList<String>();
 			Preset preset = new Preset("default");
 			presets.put(preset.getName(), preset);
+			// every command that affects block colours, in order, for the digest
+			StringBuilder colorconfig = new StringBuilder();
 
 			try {
 				while (scan.hasNext()) {
@@ -105,6 +109,7 @@ public final class Config {
 						scan.nextLine();
 					} else if (gobble(scan, "block")) {
 						blockid = scan.nextInt();
+						colorconfig.append("block ").append(blockid).append('\n');
 						// reset data, datamask, biome values when changing blockid
 						data = -1;
 						datamask = 0xF;
@@ -112,6 +117,7 @@ public final class Config {
 					} else if (gobble(scan, "transparent")) { 
 						// mark selected block id as transparent (game logic version)
 						blocktransparent[blockid] = true;
+						colorconfig.append("transparent\n");
 					} else if (gobble(scan, "name")) {
 						blocknames[blockid] = nextQuotedString(scan);
 					} else if (gobble(scan, "color")) {
@@ -122,6 +128,7 @@ public final class Config {
 						rgb |= scan.nextInt();
 						rgb <<= 8;
 						rgb |= scan.nextInt();
+						colorconfig.append("color ").append(rgb).append('\n');
 						if (blockid >= 0 && blockid < 4096) {
 							// let's not try to do stuff with invalid ids now shall we?
 							DataBiomeBlockColorProvider dbcp = dbcp_map.get(blockid);
@@ -170,18 +177,21 @@ public final class Config {
 						} else {
 							data = scan.nextInt();
 						}
+						colorconfig.append("data ").append(data).append('\n');
 					} else if (gobble(scan, "datamask")) {
 						if (gobble(scan, "all")) {
 							datamask = 0xF;
 						} else {
 							datamask = scan.nextInt();
 						}
+						colorconfig.append("datamask ").append(datamask).append('\n');
 					} else if (gobble(scan, "biome")) {
 						if (gobble(scan, "all")) {
 							biome = -1;
 						} else {
 							biome = scan.nextInt();
 						}
+						colorconfig.append("biome ").append(biome).append('\n');
 					} else if (gobble(scan, "minecraftdir")) {
 						mcdirs.add(nextQuotedString(scan));
 					} else if (gobble(scan, "savedir")) {
@@ -246,6 +256,33 @@ public final class Config {
 						} else {
 							throw new IOException("Bad showmarkers param: " + mode);
 						}
+					} else if (gobble(scan, "worldindex")) {
+						String mode = scan.next();
+						if ("on".equals(mode)) {
+							preset.setWorldIndex(true);
+						} else if ("off".equals(mode)) {
+							preset.setWorldIndex(false);
+						} else {
+							throw new IOException("Bad worldindex param: " + mode);
+						}
+					} else if (gobble(scan, "incremental")) {
+						String mode = scan.next();
+						if ("on".equals(mode)) {
+							preset.setIncremental(true);
+						} else if ("off".equals(mode)) {
+							preset.setIncremental(false);
+						} else {
+							throw new IOException("Bad incremental param: " + mode);
+						}
+					} else if (gobble(scan, "voxellayout")) {
+						String mode = scan.next();
+						if ("section".equals(mode)) {
+							preset.setColumnLayout(false);
+						} else if ("column".equals(mode)) {
+							preset.setColumnLayout(true);
+						} else {
+							throw new IOException("Bad voxellayout param: " + mode);
+						}
 					} else if (gobble(scan, "includeblocks")) {
 						preset.setBlockFilter(MineSpy.parseIntArray(nextQuotedString(scan)));
 						preset.setBlockFilterInclusive(true);
@@ -268,6 +305,12 @@ public final class Config {
 						preset.setLevelFilterEnabled(false);
 					} else if (gobble(scan, "throttle")) {
 						preset.setThrottle(scan.nextDouble());
+					} else if (gobble(scan, "prefetch")) {
+						preset.setPrefetch(scan.nextInt());
+					} else if (gobble(scan, "offheapchunks")) {
+						preset.setOffHeapChunks(scan.nextInt());
+					} else if (gobble(scan, "iolimit")) {
+						preset.setIOLimit(scan.nextDouble());
 					}
 
 					else {
@@ -281,6 +324,10 @@ public final class Config {
 
 			scan.close();
 
+			CRC32 crc = new CRC32();
+			crc.update(colorconfig.toString().getBytes("UTF-8"));
+			colordigest = String.format("%08x", crc.getValue());
+
 			// put any blockid-specific color providers into the main one
 			for (Map.Entry<Integer, DataBiomeBlockColorProvider> e : dbcp_map.entrySet()) {
 				cp.setBlockColorProvider(e.getKey(), e.getValue());
@@ -354,6 +401,13 @@ public final class Config {
 		return cp;
 	}
 
+	/**
+	 * @return A digest of the block colour and transparency settings, which affect how every shader draws blocks.
+	 */
+	public String getBlockColorDigest() {
+		return colordigest;
+	}
+
 	public String getBlockName(int blockid) {
 		if (blocknames[blockid] != null) return blocknames[blockid];
 		return "";
@@ -14,4 +14,9 @@ public interface IChunk {
 	
 	public int getSkyLight(int local_x, int local_z, int local_y);
 	
+	/**
+	 * @return The summary of the columns of this chunk; see <code>ColumnSummary</code>.
+	 */
+	public ColumnSummary getColumnSummary();
+	
 }
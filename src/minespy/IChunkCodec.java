@@ -0,0 +1,50 @@
+package minespy;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A compression scheme for chunk data in region files, identified by the version byte stored in front of each chunk.
+ * Codecs are shared between threads, so any per-thread state (inflaters, buffers) comes from the
+ * <code>ChunkDecompressor</code> or <code>ChunkCompressor</code> passed in. See <code>ChunkCodecs</code> for the
+ * registry.
+ */
+public interface IChunkCodec {
+
+	/**
+	 * @return The region file chunk version this codec handles.
+	 */
+	public int getVersion();
+
+	/**
+	 * @return A short lowercase name for the codec, e.g. for command line options.
+	 */
+	public String getName();
+
+	/**
+	 * Decompress chunk data into <code>dec.buffer()</code>, growing it with <code>dec.outputBuffer()</code> as needed.
+	 * 
+	 * @return The length of the decompressed data.
+	 * @throws IOException
+	 *             If the data is invalid.
+	 */
+	public int decode(ChunkDecompressor dec, byte[] src, int off, int len) throws IOException;
+
+	/**
+	 * Compress chunk data into <code>comp.buffer()</code>, growing it with <code>comp.outputBuffer()</code> as needed.
+	 * 
+	 * @return The length of the compressed data.
+	 * @throws IOException
+	 *             If the data cannot be compressed.
+	 */
+	public int encode(ChunkCompressor comp, byte[] src, int off, int len) throws IOException;
+
+	/**
+	 * Open a stream over the decompressed chunk data. The source array may be kept by the stream.
+	 * 
+	 * @throws IOException
+	 *             If the data is invalid.
+	 */
+	public InputStream openStream(byte[] src, int off, int len) throws IOException;
+
+}
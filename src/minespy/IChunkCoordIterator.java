@@ -9,4 +9,11 @@ public interface IChunkCoordIterator {
 	 */
 	public ChunkCoord next();
 
+	/**
+	 * Stop any work done in the background for this iterator, such as prefetching chunk data. Called automatically
+	 * when the iterator runs out of chunks; must be called by a user that stops early. <code>next()</code> throws
+	 * <code>NoMoreChunksException</code> afterwards.
+	 */
+	public void close();
+
 }
\ No newline at end of file
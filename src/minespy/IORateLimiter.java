@@ -0,0 +1,63 @@
+package minespy;
+
+/**
+ * Token bucket limiting the rate at which bytes are read. Callers ask for the bytes they are about to read and are
+ * made to wait until the bucket has refilled enough to cover them. A request larger than the bucket is allowed
+ * through and paid back by later callers, so large reads are never refused.
+ */
+public class IORateLimiter {
+
+	private final double m_rate;
+	private final double m_capacity;
+	private double m_tokens;
+	private long m_last;
+
+	/**
+	 * @param bytes_per_second
+	 *            The sustained rate to allow.
+	 * @throws IllegalArgumentException
+	 *             If the rate is not positive.
+	 */
+	public IORateLimiter(double bytes_per_second) {
+		if (!(bytes_per_second > 0)) throw new IllegalArgumentException("Rate must be positive.");
+		m_rate = bytes_per_second;
+		// allow bursts of a quarter of a second
+		m_capacity = bytes_per_second / 4;
+		m_tokens = m_capacity;
+		m_last = System.nanoTime();
+	}
+
+	public double getRate() {
+		return m_rate;
+	}
+
+	/**
+	 * Wait until <code>bytes</code> may be read. Not interruptible: the region files use channels that are closed by
+	 * interrupting a thread that is reading them, so interrupts are not used to stop readers anyway.
+	 * 
+	 * @param bytes
+	 *            The number of bytes about to be read.
+	 */
+	public void acquire(int bytes) {
+		long wait;
+		synchronized (this) {
+			long now = System.nanoTime();
+			m_tokens = Math.min(m_capacity, m_tokens + (now - m_last) * m_rate / 1e9);
+			m_last = now;
+			m_tokens -= bytes;
+			wait = m_tokens < 0 ? (long) (-m_tokens * 1e9 / m_rate) : 0;
+		}
+		long deadline = System.nanoTime() + wait;
+		boolean interrupted = false;
+		while (wait > 0) {
+			try {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+			wait = deadline - System.nanoTime();
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+}
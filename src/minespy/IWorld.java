@@ -1,5 +1,7 @@
 package minespy;
 
+import java.util.Set;
+
 import minespy.chunkfilters.IChunkFilter;
 
 public interface IWorld {
@@ -18,6 +20,17 @@ public interface IWorld {
 	
 	public int totalChunks();
 	
+	/**
+	 * @return The coordinates of all chunks in this world.
+	 */
+	public Set<ChunkCoord> chunks();
+	
+	/**
+	 * @return The last modification time of a chunk, in seconds since the epoch, or 0 if it is unknown or the chunk
+	 *         does not exist.
+	 */
+	public int getChunkTimestamp(ChunkCoord cc);
+	
 	public YRun getYRun(int x, int z);
 	
 	public void setChunkFilter(IChunkFilter cf);
@@ -28,6 +41,11 @@ public interface IWorld {
 	
 	public IChunkCoordIterator iterator();
 	
+	/**
+	 * @return An iterator over only the specified chunks, in the same order as <code>iterator()</code>.
+	 */
+	public IChunkCoordIterator iterator(Set<ChunkCoord> ccs);
+	
 	public void close();
 	
 }
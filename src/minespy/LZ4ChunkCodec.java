@@ -0,0 +1,317 @@
+package minespy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Chunk codec for region file version 4: LZ4 compressed data in the framing of lz4-java's
+ * <code>LZ4BlockOutputStream</code> (with its default 64KB blocks and XXHash32 block checksums), which is what
+ * Minecraft writes. Much faster to decode than zlib, at the cost of larger files.
+ * <p>
+ * Each block is a 21-byte header - the magic "LZ4Block", a token byte holding the compression method (raw or LZ4) and
+ * block size, the compressed and original lengths and a checksum of the original data, all little-endian - followed by
+ * the block data. A block with both lengths 0 ends the stream.
+ */
+public class LZ4ChunkCodec implements IChunkCodec {
+
+	private static final byte[] MAGIC = { 'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k' };
+	private static final int HEADER_LENGTH = MAGIC.length + 13;
+	private static final int METHOD_RAW = 0x10;
+	private static final int METHOD_LZ4 = 0x20;
+	private static final int LEVEL_BASE = 10;
+	private static final int BLOCK_SIZE = 1 << 16;
+	private static final int CHECKSUM_SEED = 0x9747b28c;
+
+	// lz4 block format constraints
+	private static final int MIN_MATCH = 4;
+	private static final int LAST_LITERALS = 5;
+	private static final int MF_LIMIT = 12;
+	private static final int MAX_OFFSET = 65535;
+	private static final int HASH_LOG = 14;
+
+	@Override
+	public int getVersion() {
+		return RegionFile.VERSION_LZ4;
+	}
+
+	@Override
+	public String getName() {
+		return "lz4";
+	}
+
+	@Override
+	public int decode(ChunkDecompressor dec, byte[] src, int off, int len) throws IOException {
+		int end = off + len;
+		int n = 0;
+		while (true) {
+			if (end - off < HEADER_LENGTH) throw new IOException("LZ4: truncated block header");
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (src[off + i] != MAGIC[i]) throw new IOException("LZ4: bad block magic");
+			}
+			int token = src[off + MAGIC.length] & 0xFF;
+			int method = token & 0xF0;
+			int block_size = 1 << (LEVEL_BASE + (token & 0x0F));
+			int clen = readIntLE(src, off + MAGIC.length + 1);
+			int olen = readIntLE(src, off + MAGIC.length + 5);
+			int check = readIntLE(src, off + MAGIC.length + 9);
+			off += HEADER_LENGTH;
+			if ((method != METHOD_RAW && method != METHOD_LZ4) || olen < 0 || olen > block_size || clen < 0
+					|| (olen == 0) != (clen == 0) || (method == METHOD_RAW && olen != clen)) {
+				throw new IOException("LZ4: invalid block header");
+			}
+			if (olen == 0) {
+				if (check != 0) throw new IOException("LZ4: invalid end of stream");
+				return n;
+			}
+			if (clen > end - off) throw new IOException("LZ4: truncated block");
+			byte[] out = dec.outputBuffer(n + olen);
+			if (method == METHOD_RAW) {
+				System.arraycopy(src, off, out, n, olen);
+			} else {
+				decompressBlock(src, off, clen, out, n, olen);
+			}
+			if ((xxhash32(out, n, olen, CHECKSUM_SEED) & 0x0FFFFFFF) != check) {
+				throw new IOException("LZ4: block checksum mismatch");
+			}
+			off += clen;
+			n += olen;
+		}
+	}
+
+	@Override
+	public int encode(ChunkCompressor comp, byte[] src, int off, int len) {
+		int[] table = new int[1 << HASH_LOG];
+		int n = 0;
+		int end = off + len;
+		int level = 32 - Integer.numberOfLeadingZeros(BLOCK_SIZE - 1) - LEVEL_BASE;
+		while (off < end) {
+			int olen = Math.min(BLOCK_SIZE, end - off);
+			// worst case expansion of incompressible data
+			byte[] out = comp.outputBuffer(n + HEADER_LENGTH + olen + olen / 255 + 16);
+			int clen = compressBlock(src, off, olen, out, n + HEADER_LENGTH, table);
+			int method = METHOD_LZ4;
+			if (clen >= olen) {
+				method = METHOD_RAW;
+				clen = olen;
+				System.arraycopy(src, off, out, n + HEADER_LENGTH, olen);
+			}
+			writeHeader(out, n, method | level, clen, olen, xxhash32(src, off, olen, CHECKSUM_SEED) & 0x0FFFFFFF);
+			n += HEADER_LENGTH + clen;
+			off += olen;
+		}
+		writeHeader(comp.outputBuffer(n + HEADER_LENGTH), n, METHOD_RAW | level, 0, 0, 0);
+		return n + HEADER_LENGTH;
+	}
+
+	@Override
+	public InputStream openStream(byte[] src, int off, int len) throws IOException {
+		ChunkDecompressor dec = ChunkDecompressor.get();
+		int n = decode(dec, src, off, len);
+		return new ByteArrayInputStream(Arrays.copyOf(dec.buffer(), n));
+	}
+
+	private static void writeHeader(byte[] out, int off, int token, int clen, int olen, int check) {
+		System.arraycopy(MAGIC, 0, out, off, MAGIC.length);
+		out[off + MAGIC.length] = (byte) token;
+		writeIntLE(out, off + MAGIC.length + 1, clen);
+		writeIntLE(out, off + MAGIC.length + 5, olen);
+		writeIntLE(out, off + MAGIC.length + 9, check);
+	}
+
+	/**
+	 * Decompress one LZ4 block, which must decompress to exactly <code>olen</code> bytes.
+	 */
+	private static void decompressBlock(byte[] src, int sp, int clen, byte[] dst, int dp, int olen)
+			throws IOException {
+		int send = sp + clen;
+		int dstart = dp;
+		int dend = dp + olen;
+		try {
+			while (true) {
+				int token = src[sp++] & 0xFF;
+				// literals
+				int lit = token >>> 4;
+				if (lit == 15) {
+					int b;
+					do {
+						b = src[sp++] & 0xFF;
+						lit += b;
+					} while (b == 255);
+				}
+				if (lit > send - sp || lit > dend - dp) throw new IOException("LZ4: malformed block");
+				System.arraycopy(src, sp, dst, dp, lit);
+				sp += lit;
+				dp += lit;
+				// the last sequence has no match
+				if (sp == send) break;
+				// match
+				int offset = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8);
+				sp += 2;
+				int ml = token & 0x0F;
+				if (ml == 15) {
+					int b;
+					do {
+						b = src[sp++] & 0xFF;
+						ml += b;
+					} while (b == 255);
+				}
+				ml += MIN_MATCH;
+				if (offset == 0 || offset > dp - dstart || ml > dend - dp) {
+					throw new IOException("LZ4: malformed block");
+				}
+				int mp = dp - offset;
+				if (offset >= ml) {
+					System.arraycopy(dst, mp, dst, dp, ml);
+					dp += ml;
+				} else {
+					// overlapping copy repeats the last offset bytes
+					for (int i = 0; i < ml; i++) {
+						dst[dp++] = dst[mp++];
+					}
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("LZ4: malformed block", e);
+		}
+		if (dp != dend) throw new IOException("LZ4: block decompressed to the wrong length");
+	}
+
+	/**
+	 * Compress one block with a single-probe hash table (like LZ4's fast mode).
+	 * 
+	 * @return The compressed length.
+	 */
+	private static int compressBlock(byte[] src, int off, int len, byte[] dst, int dp, int[] table) {
+		int dstart = dp;
+		int end = off + len;
+		int anchor = off;
+		if (len > MF_LIMIT) {
+			Arrays.fill(table, -1);
+			// a match must start at least MF_LIMIT before the end and leave LAST_LITERALS bytes after it
+			int mf_limit = end - MF_LIMIT;
+			int match_limit = end - LAST_LITERALS;
+			int sp = off;
+			while (sp <= mf_limit) {
+				int seq = readIntLE(src, sp);
+				int h = (seq * -1640531535) >>> (32 - HASH_LOG);
+				int ref = table[h];
+				table[h] = sp;
+				if (ref < 0 || sp - ref > MAX_OFFSET || readIntLE(src, ref) != seq) {
+					sp++;
+					continue;
+				}
+				// extend the match backwards over pending literals, then forwards
+				while (sp > anchor && ref > off && src[sp - 1] == src[ref - 1]) {
+					sp--;
+					ref--;
+				}
+				int ml = MIN_MATCH;
+				while (sp + ml < match_limit && src[sp + ml] == src[ref + ml]) {
+					ml++;
+				}
+				dp = writeSequence(src, anchor, sp - anchor, sp - ref, ml, dst, dp);
+				sp += ml;
+				anchor = sp;
+				if (sp - 2 >= off && sp - 2 <= mf_limit) {
+					table[(readIntLE(src, sp - 2) * -1640531535) >>> (32 - HASH_LOG)] = sp - 2;
+				}
+			}
+		}
+		// last literals
+		int lit = end - anchor;
+		int tp = dp++;
+		dp = writeLength(lit, dst, dp);
+		dst[tp] = (byte) (Math.min(lit, 15) << 4);
+		System.arraycopy(src, anchor, dst, dp, lit);
+		dp += lit;
+		return dp - dstart;
+	}
+
+	private static int writeSequence(byte[] src, int lit_off, int lit, int offset, int ml, byte[] dst, int dp) {
+		int tp = dp++;
+		dp = writeLength(lit, dst, dp);
+		System.arraycopy(src, lit_off, dst, dp, lit);
+		dp += lit;
+		dst[dp++] = (byte) offset;
+		dst[dp++] = (byte) (offset >>> 8);
+		int m = ml - MIN_MATCH;
+		dp = writeLength(m, dst, dp);
+		dst[tp] = (byte) ((Math.min(lit, 15) << 4) | Math.min(m, 15));
+		return dp;
+	}
+
+	/**
+	 * Write the extra length bytes for a token nibble of 15.
+	 */
+	private static int writeLength(int l, byte[] dst, int dp) {
+		if (l < 15) return dp;
+		l -= 15;
+		while (l >= 255) {
+			dst[dp++] = (byte) 255;
+			l -= 255;
+		}
+		dst[dp++] = (byte) l;
+		return dp;
+	}
+
+	private static int readIntLE(byte[] b, int i) {
+		return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | ((b[i + 3] & 0xFF) << 24);
+	}
+
+	private static void writeIntLE(byte[] b, int i, int v) {
+		b[i] = (byte) v;
+		b[i + 1] = (byte) (v >>> 8);
+		b[i + 2] = (byte) (v >>> 16);
+		b[i + 3] = (byte) (v >>> 24);
+	}
+
+	private static final int PRIME1 = 0x9E3779B1;
+	private static final int PRIME2 = 0x85EBCA77;
+	private static final int PRIME3 = 0xC2B2AE3D;
+	private static final int PRIME4 = 0x27D4EB2F;
+	private static final int PRIME5 = 0x165667B1;
+
+	/**
+	 * XXHash32, as used for the block checksums.
+	 */
+	static int xxhash32(byte[] b, int off, int len, int seed) {
+		int end = off + len;
+		int h;
+		if (len >= 16) {
+			int v1 = seed + PRIME1 + PRIME2;
+			int v2 = seed + PRIME2;
+			int v3 = seed;
+			int v4 = seed - PRIME1;
+			int limit = end - 16;
+			do {
+				v1 = Integer.rotateLeft(v1 + readIntLE(b, off) * PRIME2, 13) * PRIME1;
+				v2 = Integer.rotateLeft(v2 + readIntLE(b, off + 4) * PRIME2, 13) * PRIME1;
+				v3 = Integer.rotateLeft(v3 + readIntLE(b, off + 8) * PRIME2, 13) * PRIME1;
+				v4 = Integer.rotateLeft(v4 + readIntLE(b, off + 12) * PRIME2, 13) * PRIME1;
+				off += 16;
+			} while (off <= limit);
+			h = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12)
+					+ Integer.rotateLeft(v4, 18);
+		} else {
+			h = seed + PRIME5;
+		}
+		h += len;
+		while (off <= end - 4) {
+			h = Integer.rotateLeft(h + readIntLE(b, off) * PRIME3, 17) * PRIME4;
+			off += 4;
+		}
+		while (off < end) {
+			h = Integer.rotateLeft(h + (b[off] & 0xFF) * PRIME5, 11) * PRIME1;
+			off++;
+		}
+		h ^= h >>> 15;
+		h *= PRIME2;
+		h ^= h >>> 13;
+		h *= PRIME3;
+		h ^= h >>> 16;
+		return h;
+	}
+
+}
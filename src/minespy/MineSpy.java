@@ -4,11 +4,14 @@ import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 
 import javax.imageio.ImageIO;
@@ -46,13 +49,18 @@ public class MineSpy {
 			});
 		} else {
 			// run cmdline
+			// MineSpy preset worlddir [nether|end] [-iolimit MB/s]
 			Preset p = Config.getConfig().getPreset(args[0]);
 			File worlddir = new File(args[1]);
 			Dimension dim = Dimension.OVERWORLD;
-			if (args.length > 2 && args[2].equals("nether")) {
-				dim = Dimension.NETHER;
-			} else if (args.length > 2 && args[2].equals("end")) {
-				dim = Dimension.END;
+			for (int i = 2; i < args.length; i++) {
+				if (args[i].equals("nether")) {
+					dim = Dimension.NETHER;
+				} else if (args[i].equals("end")) {
+					dim = Dimension.END;
+				} else if (args[i].equals("-iolimit") && i + 1 < args.length) {
+					p.setIOLimit(Double.parseDouble(args[++i]));
+				}
 			}
 			renderPreset(p, worlddir, dim, new IRenderListener() {
 
@@ -63,7 +71,8 @@ public class MineSpy {
 
 				@Override
 				public void notifyProgress(int progress, int total) {
-					System.out.printf("\r%d / %d [%d%%] chunks rendered.", progress, total, progress * 100 / total);
+					System.out.printf("\r%d / %d [%d%%] chunks rendered.", progress, total, total == 0 ? 100
+							: progress * 100 / total);
 				}
 
 				@Override
@@ -102,13 +111,12 @@ public class MineSpy {
 					Map<String, double[]> players = new HashMap<String, double[]>();
 					double[] pos_worldspawn = new double[3];
 					if (p.getShowMarkers()) {
-						Tag level = Tag.parse(new DataInputStream(new GZIPInputStream(new FileInputStream(worlddir
-								.getPath() + File.separator + "level.dat"))));
+						Tag level = parseLazyGZip(new File(worlddir.getPath() + File.separator + "level.dat"));
 						pos_worldspawn[0] = level.getDouble("Data", "SpawnX");
 						pos_worldspawn[1] = level.getDouble("Data", "SpawnY");
 						pos_worldspawn[2] = level.getDouble("Data", "SpawnZ");
 						for (File f : new File(worlddir.getPath() + File.separator + "players").listFiles()) {
-							Tag player = Tag.parse(new DataInputStream(new GZIPInputStream(new FileInputStream(f))));
+							Tag player = parseLazyGZip(f);
 							int playerdim = player.getInt("Dimension");
 							if (playerdim != dim.getIndex()) continue;
 							double[] pos = new double[3];
@@ -131,18 +139,74 @@ public class MineSpy {
 						throw new RuntimeException("Image file is not valid.", e);
 					}
 
-					IWorld world = new RegionFileWorld(regiondir.listFiles(new AnvilRegionFilenameFilter()));
-
-					world.setChunkFilter(p.getChunkFilter());
-
-					final Renderer r = new Renderer(world, Config.getConfig().getBlockColorProvider(),
-							p.getMapShaderFactory(), p.getSkylight());
-					if (rl != null) {
-						r.addRenderListener(rl);
+					if (p.getIOLimit() > 0) {
+						MineSpy.logf("Limiting region file reads to %.1f MB/s.\n", p.getIOLimit());
+						RegionFile.setReadRateLimiter(new IORateLimiter(p.getIOLimit() * 1024 * 1024));
+					} else {
+						RegionFile.setReadRateLimiter(null);
 					}
-					r.setThrottle(p.getThrottle());
 
+					File indexfile = p.getWorldIndex() ? new File(regiondir, "minespy.idx") : null;
+					RegionFileWorld rfworld = new RegionFileWorld(regiondir.listFiles(new AnvilRegionFilenameFilter()),
+							indexfile);
+					rfworld.setPrefetchDistance(p.getPrefetch());
+					rfworld.setColumnLayout(p.getColumnLayout());
+					if (p.getOffHeapChunks() > 0) {
+						MineSpy.logf("Keeping up to %d MB of chunks off the heap.\n", p.getOffHeapChunks());
+					}
+					rfworld.setOffHeapChunks(p.getOffHeapChunks() * 1024L * 1024L);
+					rfworld.setColumnSummary(Config.getConfig().getBlockColorProvider(), p.getMapShaderFactory()
+							.getAlphaThresholds());
+					IWorld world = rfworld;
 					try {
+						world.setChunkFilter(p.getChunkFilter());
+
+						// incremental render: redraw only changed chunks over the last image
+						// markers are drawn into the image, so they can't be drawn over
+						RenderManifest manifest = null;
+						final File manifestfile = new File(imgfile.getPath() + ".manifest");
+						BufferedImage baseimg = null;
+						Set<ChunkCoord> changed = null;
+						if (p.getIncremental()) {
+							if (p.getShowMarkers()) {
+								MineSpy.log("Incremental rendering is not available with markers, "
+										+ "doing a full render.");
+							} else {
+								manifest = RenderManifest.create(p.getRenderKey(), world);
+								RenderManifest prev = RenderManifest.load(manifestfile);
+								if (prev != null && imgfile.length() > 0) {
+									changed = manifest.changedSince(prev);
+								}
+								if (changed != null) {
+									try {
+										baseimg = ImageIO.read(imgfile);
+									} catch (IOException e) {
+										changed = null;
+									}
+									if (baseimg == null || baseimg.getWidth() != world.sizeX()
+											|| baseimg.getHeight() != world.sizeZ()) {
+										baseimg = null;
+										changed = null;
+									}
+								}
+								if (changed != null) {
+									MineSpy.logf("Incremental render: %d of %d chunks to render.\n", changed.size(),
+											manifest.totalChunks());
+								} else {
+									MineSpy.log("Incremental render: existing image can't be reused, "
+											+ "doing a full render.");
+								}
+							}
+						}
+
+						final Renderer r = new Renderer(world, Config.getConfig().getBlockColorProvider(),
+								p.getMapShaderFactory(), p.getSkylight(), baseimg, changed);
+						baseimg = null;
+						if (rl != null) {
+							r.addRenderListener(rl);
+						}
+						r.setThrottle(p.getThrottle());
+
 						MineSpy.log("Starting render...");
 						r.start();
 
@@ -150,7 +214,7 @@ public class MineSpy {
 						r.waitUntilDone();
 						double time_render = (System.currentTimeMillis() - time_render_start) / 1000d;
 						MineSpy.logf("Rendering done in %.3f seconds at %.1f chunks per second.\n", time_render,
-								world.totalChunks() / time_render);
+								r.totalChunks() / time_render);
 
 						// draw markers
 						if (p.getShowMarkers()) {
@@ -217,6 +281,12 @@ public class MineSpy {
 							os.close();
 							MineSpy.logf("Image written to file in %.3f seconds.\n",
 									(System.currentTimeMillis() - time_imgwrite_start) / 1000d);
+							if (manifest != null) {
+								manifest.save(manifestfile);
+							} else if (manifestfile.exists() && !manifestfile.delete()) {
+								// the image no longer matches it; an incremental render must not start from it
+								MineSpy.log("Unable to delete stale render manifest '" + manifestfile.getName() + "'.");
+							}
 						} catch (Exception e) {
 							e.printStackTrace();
 							MineSpy.log("Error writing '" + imgfile.getName() + "'.");
@@ -225,11 +295,12 @@ public class MineSpy {
 						MineSpy.logf("Done in %.3f seconds.\n",
 								(System.currentTimeMillis() - time_render_start) / 1000d);
 
-						world.close();
-
 					} catch (Exception e) {
 						e.printStackTrace();
 						MineSpy.log("Error during render. Please run from console for details.");
+					} finally {
+						// stops the prefetcher too, even if the render failed
+						world.close();
 					}
 
 				} catch (Exception e) {
@@ -243,6 +314,24 @@ public class MineSpy {
 		}.start();
 	}
 
+	/**
+	 * Decompress a gzipped NBT file into memory and parse it lazily, for reading a few values from it.
+	 */
+	private static Tag parseLazyGZip(File f) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = new GZIPInputStream(new FileInputStream(f));
+		try {
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) > 0) {
+				bytes.write(buf, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return Tag.parseLazy(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+
 	public static synchronized void logf(String fmt, Object... args) {
 		String s = String.format(fmt, args);
 		System.out.print(s);
@@ -259,6 +348,33 @@ public class MineSpy {
 	public static synchronized void addLogOutput(PrintWriter p) {
 		logouts.add(p);
 	}
+
+	/**
+	 * Put a newly written file in place of another without there ever being neither. Where a rename can't replace an
+	 * existing file (Windows), the old one is moved to a <code>.bak</code> file first and restored if the rename still
+	 * fails. The replacement is left where it is if it can't be put in place.
+	 * 
+	 * @param target
+	 *            The file to replace; need not exist.
+	 * @param replacement
+	 *            The new file.
+	 * @throws IOException
+	 *             If the replacement can't be put in place.
+	 */
+	public static void replaceFile(File target, File replacement) throws IOException {
+		// on POSIX this replaces the target in one go
+		if (replacement.renameTo(target)) return;
+		if (!target.exists()) throw new IOException("Unable to rename " + replacement + " to " + target);
+		// elsewhere the target has to be moved out of the way first
+		File bak = new File(target.getPath() + ".bak");
+		if (bak.exists() && !bak.delete()) throw new IOException("Unable to delete " + bak);
+		if (!target.renameTo(bak)) throw new IOException("Unable to replace " + target + " with " + replacement);
+		if (!replacement.renameTo(target)) {
+			if (!bak.renameTo(target)) throw new IOException("Unable to restore " + target + " from " + bak);
+			throw new IOException("Unable to replace " + target + " with " + replacement);
+		}
+		if (!bak.delete()) log("Unable to delete " + bak);
+	}
 	
 	public static int[] parseIntArray(String s) {
 		String[] tokens = s.trim().split("\\s*,\\s*");
@@ -20,6 +20,9 @@ public class Preset {
 	private boolean do_forcebrightness = false;
 	private boolean do_cavemode = false;
 	private boolean do_showmarkers = false;
+	private boolean do_worldindex = false;
+	private boolean do_incremental = false;
+	private boolean do_columnlayout = false;
 
 	private boolean do_blockfilter = false, blockfilter_include = false;
 	private int[] blockfilter = null;
@@ -29,6 +32,9 @@ public class Preset {
 
 	private String fname = null;
 	private double throttle = 1.0;
+	private int prefetch = 256;
+	private double iolimit = 0;
+	private int offheapchunks = 0;
 
 	public Preset() {
 		this(null);
@@ -78,6 +84,30 @@ public class Preset {
 	public boolean getShowMarkers() {
 		return do_showmarkers;
 	}
+	
+	public void setWorldIndex(boolean b) {
+		do_worldindex = b;
+	}
+	
+	public boolean getWorldIndex() {
+		return do_worldindex;
+	}
+	
+	public void setIncremental(boolean b) {
+		do_incremental = b;
+	}
+	
+	public boolean getIncremental() {
+		return do_incremental;
+	}
+	
+	public void setColumnLayout(boolean b) {
+		do_columnlayout = b;
+	}
+	
+	public boolean getColumnLayout() {
+		return do_columnlayout;
+	}
 
 	public void setBlockFilterEnabled(boolean b) {
 		do_blockfilter = b;
@@ -138,6 +168,15 @@ public class Preset {
 				.getFileName());
 	}
 
+	/**
+	 * @return A string identifying the settings that affect the rendered image, independent of the preset name. This
+	 *         includes the block colours from the config.
+	 */
+	public String getRenderKey() {
+		return String.format("%s_light%d_%s_colors%s", msf.getFileName(), skylight, getChunkFilter().getFileName(),
+				Config.getConfig().getBlockColorDigest());
+	}
+
 	public void setFileName(String fname) {
 		this.fname = fname;
 	}
@@ -150,4 +189,34 @@ public class Preset {
 		throttle = f;
 	}
 
+	/**
+	 * @return The limit on the rate of reading region files, in MB/s, or 0 for no limit.
+	 */
+	public double getIOLimit() {
+		return iolimit;
+	}
+
+	public void setIOLimit(double mbps) {
+		if (mbps < 0) throw new IllegalArgumentException("Negative I/O limit.");
+		iolimit = mbps;
+	}
+
+	public int getPrefetch() {
+		return prefetch;
+	}
+
+	public void setPrefetch(int chunks) {
+		if (chunks < 0) throw new IllegalArgumentException("Negative prefetch distance.");
+		prefetch = chunks;
+	}
+
+	public int getOffHeapChunks() {
+		return offheapchunks;
+	}
+
+	public void setOffHeapChunks(int mb) {
+		if (mb < 0) throw new IllegalArgumentException("Negative off-heap chunk store size.");
+		offheapchunks = mb;
+	}
+
 }
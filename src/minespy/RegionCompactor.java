@@ -0,0 +1,156 @@
+package minespy;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Rewrites region files with their chunks stored contiguously, in the order the renderer visits them, and without the
+ * free sectors left behind by chunks that have grown or moved. Chunks keep their timestamps and, unless a compression
+ * level or codec is given, their compressed data. Converting to the <code>lz4</code> or <code>none</code> codec makes
+ * worlds that are only kept for rendering much faster to read.
+ * <p>
+ * Usage: <code>RegionCompactor [-level 0-9] [-codec gzip|deflate|none|lz4] (regionfile | regiondir)...</code>
+ */
+public class RegionCompactor {
+
+	// largest compressed chunk that fits in the 255 sectors a region file allows
+	private static final int MAX_CHUNK_LENGTH = 255 * RegionFile.SECTOR_BYTES - RegionFile.CHUNK_HEADER_SIZE - 1;
+
+	private final int m_level;
+	private final IChunkCodec m_codec;
+
+	/**
+	 * @param level_
+	 *            The deflate level to recompress all chunks at (0 to 9), or -1 to copy chunks without recompressing
+	 *            them.
+	 */
+	public RegionCompactor(int level_) {
+		this(level_, null);
+	}
+
+	/**
+	 * @param level_
+	 *            The deflate level to use when recompressing (0 to 9), or -1 for the default.
+	 * @param codec_
+	 *            The codec to recompress all chunks with, or null to only recompress if a level is given (with
+	 *            deflate).
+	 */
+	public RegionCompactor(int level_, IChunkCodec codec_) {
+		if (level_ < -1 || level_ > 9) throw new IllegalArgumentException("Invalid compression level " + level_);
+		m_level = level_;
+		m_codec = codec_;
+	}
+
+	/**
+	 * Compact a region file. The compacted file is written next to the original, which it then replaces. The file
+	 * must not be open elsewhere (e.g. by a running server) while it is compacted.
+	 * 
+	 * @param f
+	 *            The region file.
+	 * @return The change in file size, in bytes (negative if the file shrank).
+	 * @throws IOException
+	 *             If the file cannot be read, or the compacted file cannot be written or put in place.
+	 */
+	public long compact(File f) throws IOException {
+		File tmp = new File(f.getPath() + ".tmp");
+		if (tmp.exists() && !tmp.delete()) throw new IOException("Unable to delete " + tmp);
+		long size_before = f.length();
+		RegionFile src = new RegionFile(f, true);
+		try {
+			RegionFile dst = new RegionFile(tmp);
+			try {
+				copyChunks(src, dst);
+			} finally {
+				dst.close();
+			}
+		} catch (IOException e) {
+			tmp.delete();
+			throw e;
+		} finally {
+			src.close();
+		}
+		MineSpy.replaceFile(f, tmp);
+		return f.length() - size_before;
+	}
+
+	private void copyChunks(RegionFile src, RegionFile dst) throws IOException {
+		ChunkDecompressor dec = ChunkDecompressor.get();
+		ChunkCompressor comp = ChunkCompressor.get();
+		byte[] data = new byte[RegionFile.SECTOR_BYTES * 8];
+		// the codec to recompress with, if any
+		IChunkCodec target = m_codec;
+		if (target == null && m_level >= 0) target = ChunkCodecs.DEFLATE;
+		if (m_level >= 0) comp.setLevel(m_level);
+		try {
+			// same order as RegionFileWorld's chunk iterator, so rendering reads the file front to back
+			for (int x = 0; x < 32; x++) {
+				for (int z = 0; z < 32; z++) {
+					if (!src.hasChunk(x, z)) continue;
+					int offset = src.getChunkLocation(x, z);
+					int numSectors = offset & 0xFF;
+					if (data.length < numSectors * RegionFile.SECTOR_BYTES) {
+						data = new byte[numSectors * RegionFile.SECTOR_BYTES];
+					}
+					int read = src.readSectors(offset >> 8, numSectors, data, 0);
+					int length = RegionFile.chunkLength(x, z, data, 0, numSectors) - 1;
+					// the last chunk in the file can end part way through its last sector, but not any sooner
+					if (length + RegionFile.CHUNK_HEADER_SIZE > read) {
+						throw new EOFException("Chunk " + x + " " + z + " is cut short by the end of " + src);
+					}
+					int version = data[4];
+					int timestamp = src.getTimestamp(x, z);
+					if (target != null && (m_level >= 0 || (version & 0xFF) != target.getVersion())) {
+						int n = dec.decompress(version, data, RegionFile.CHUNK_HEADER_SIZE, length);
+						int clength = comp.compress(target.getVersion(), dec.buffer(), 0, n);
+						if (clength <= MAX_CHUNK_LENGTH) {
+							dst.writeChunkData(x, z, target.getVersion(), comp.buffer(), clength, timestamp);
+							continue;
+						}
+						// doesn't fit at this level, keep it as it was
+					}
+					System.arraycopy(data, RegionFile.CHUNK_HEADER_SIZE, data, 0, length);
+					dst.writeChunkData(x, z, version, data, length, timestamp);
+				}
+			}
+		} finally {
+			if (m_level >= 0) comp.setLevel(Deflater.DEFAULT_COMPRESSION);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int level = -1;
+		IChunkCodec codec = null;
+		int i = 0;
+		for (; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-level")) {
+				level = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("-codec")) {
+				codec = ChunkCodecs.forName(args[i + 1]);
+				if (codec == null) throw new IllegalArgumentException("Unknown codec " + args[i + 1]);
+			} else {
+				break;
+			}
+		}
+		if (i >= args.length) {
+			System.out.println("Usage: RegionCompactor [-level 0-9] [-codec gzip|deflate|none|lz4] "
+					+ "(regionfile | regiondir)...");
+			return;
+		}
+		RegionCompactor rc = new RegionCompactor(level, codec);
+		long total = 0;
+		for (; i < args.length; i++) {
+			File f = new File(args[i]);
+			File[] files = f.isDirectory() ? f.listFiles(new AnvilRegionFilenameFilter()) : new File[] { f };
+			for (File rf : files) {
+				long delta = rc.compact(rf);
+				total += delta;
+				System.out.printf("%s: %d KB -> %d KB\n", rf.getName(), (rf.length() - delta) / 1024,
+						rf.length() / 1024);
+			}
+		}
+		System.out.printf("Total change: %d KB\n", total / 1024);
+	}
+
+}
@@ -31,8 +31,12 @@ package minespy;
  */
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.zip.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+import minespy.nbt.Tag;
 
 /**
  * Interfaces with region files on the disk. <br>
@@ -66,33 +70,79 @@ import java.util.zip.*;
  * <p>
  * A version of 2 represents a deflated (zlib compressed) NBT file. The deflated data is the chunk length - 1.
  * </p>
+ * <p>
+ * A version of 3 represents an uncompressed NBT file, and a version of 4 an LZ4 compressed one (see
+ * <code>LZ4ChunkCodec</code>). Further versions can be supported by registering codecs with <code>ChunkCodecs</code>.
+ * </p>
  */
 public class RegionFile {
 
-	private static final int VERSION_GZIP = 1;
-	private static final int VERSION_DEFLATE = 2;
+	static final int VERSION_GZIP = 1;
+	static final int VERSION_DEFLATE = 2;
+	static final int VERSION_NONE = 3;
+	static final int VERSION_LZ4 = 4;
 
-	private static final int SECTOR_BYTES = 4096;
+	static final int SECTOR_BYTES = 4096;
 	private static final int SECTOR_INTS = SECTOR_BYTES / 4;
 
 	static final int CHUNK_HEADER_SIZE = 5;
-	private static final byte emptySector[] = new byte[4096];
+
+	// shared by all region files, so it caps the total read rate
+	private static volatile IORateLimiter readLimiter = null;
 
 	private final File fileName;
 	private RandomAccessFile file;
-	private final int offsets[];
-	private final int chunkTimestamps[];
-	private ArrayList<Boolean> sectorFree;
+	private FileChannel channel;
+	private int offsets[];
+	private int chunkTimestamps[];
+	// sectors in use, and sectors released since the header was last flushed (not reusable until then)
+	private BitSet sectorUsed;
+	private BitSet sectorReleased;
+	private boolean headerDirty = false;
+	// reusable buffer for whole-sector chunk writes
+	private byte[] writeBuffer;
+	private volatile int writeVersion = VERSION_DEFLATE;
+	private final boolean readonly;
+	private int sectorCount;
+	// which chunks exist, for a region opened from an index whose header hasn't been loaded yet
+	private final long[] occupancy;
+	private volatile boolean loaded = false;
 	private int sizeDelta;
 	private long lastModified = 0;
 
 	private final int region_x, region_z;
 
+	/**
+	 * Open a region file for reading and writing. The file will be created if it does not exist.
+	 * 
+	 * @param path
+	 *            The region file.
+	 * @throws IOException
+	 *             If the file cannot be opened or its header cannot be read.
+	 */
 	public RegionFile(File path) throws IOException {
+		this(path, false);
+	}
+
+	/**
+	 * Open a region file. In read-only mode the file is never created, grown or otherwise modified, the header is
+	 * loaded with a single read, and no sector bookkeeping is set up; chunks can only be read. A read-only region file
+	 * that is too short to hold a header is treated as empty.
+	 * 
+	 * @param path
+	 *            The region file.
+	 * @param readonly_
+	 *            Whether to open the file read-only.
+	 * @throws IOException
+	 *             If the file cannot be opened or its header cannot be read.
+	 */
+	public RegionFile(File path, boolean readonly_) throws IOException {
 		offsets = new int[SECTOR_INTS];
 		chunkTimestamps = new int[SECTOR_INTS];
 
 		fileName = path;
+		readonly = readonly_;
+		occupancy = null;
 		debugln("REGION LOAD " + fileName);
 
 		sizeDelta = 0;
@@ -105,54 +155,145 @@ public class RegionFile {
 		region_x = Integer.parseInt(fparts[1]);
 		region_z = Integer.parseInt(fparts[2]);
 
+		if (readonly) {
+			openReadOnly();
+			loaded = true;
+			return;
+		}
+
 		file = new RandomAccessFile(path, "rw");
+		channel = file.getChannel();
 
 		if (file.length() < SECTOR_BYTES) {
-			// we need to write the chunk offset table
-			for (int i = 0; i < SECTOR_INTS; ++i) {
-				file.writeInt(0);
-			}
-			// write another sector for the timestamp info
-			for (int i = 0; i < SECTOR_INTS; ++i) {
-				file.writeInt(0);
-			}
-
+			// we need to write the chunk offset table and another sector for the timestamp info
+			writeFully(ByteBuffer.allocate(SECTOR_BYTES * 2), 0);
 			sizeDelta += SECTOR_BYTES * 2;
 		}
 
-		if ((file.length() & 0xfff) != 0) {
+		long length = file.length();
+		if ((length & 0xfff) != 0) {
 			// the file size is not a multiple of 4KB, grow it
-			for (int i = 0; i < (file.length() & 0xfff); ++i) {
-				file.write((byte) 0);
-			}
+			writeFully(ByteBuffer.allocate(SECTOR_BYTES - (int) (length & 0xfff)), length);
 		}
 
 		// set up the available sector map
-		int nSectors = (int) file.length() / SECTOR_BYTES;
-		sectorFree = new ArrayList<Boolean>(nSectors);
+		sectorCount = (int) (file.length() / SECTOR_BYTES);
+		sectorUsed = new BitSet(sectorCount);
+		sectorReleased = new BitSet();
+		sectorUsed.set(0); // chunk offset table
+		sectorUsed.set(1); // for the last modified info
 
-		for (int i = 0; i < nSectors; ++i) {
-			sectorFree.add(true);
+		readHeader();
+		for (int i = 0; i < SECTOR_INTS; ++i) {
+			int offset = offsets[i];
+			if (offset != 0 && (offset >> 8) + (offset & 0xFF) <= sectorCount) {
+				sectorUsed.set(offset >> 8, (offset >> 8) + (offset & 0xFF));
+			}
 		}
 
-		sectorFree.set(0, false); // chunk offset table
-		sectorFree.set(1, false); // for the last modified info
+		loaded = true;
+	}
 
-		file.seek(0);
-		for (int i = 0; i < SECTOR_INTS; ++i) {
-			int offset = file.readInt();
-			offsets[i] = offset;
-			if (offset != 0 && (offset >> 8) + (offset & 0xFF) <= sectorFree.size()) {
-				for (int sectorNum = 0; sectorNum < (offset & 0xFF); ++sectorNum) {
-					sectorFree.set((offset >> 8) + sectorNum, false);
-				}
-			}
+	/**
+	 * Open a region file read-only without touching the disk, using a previously recorded chunk occupancy bitmap (see
+	 * <code>getOccupancy()</code>). The file is only opened, and its header loaded, when a chunk is first read. The
+	 * caller is responsible for making sure the bitmap is still accurate.
+	 * 
+	 * @param path
+	 *            The region file.
+	 * @param lastModified_
+	 *            The modification date of the region file.
+	 * @param occupancy_
+	 *            The chunk occupancy bitmap.
+	 * @throws IllegalArgumentException
+	 *             If the bitmap is the wrong size.
+	 */
+	public RegionFile(File path, long lastModified_, long[] occupancy_) {
+		if (occupancy_.length != SECTOR_INTS / 64) throw new IllegalArgumentException("Bad occupancy bitmap.");
+		fileName = path;
+		readonly = true;
+		occupancy = occupancy_.clone();
+		lastModified = lastModified_;
+		debugln("REGION DEFER " + fileName);
+
+		String[] fparts = fileName.getName().split("\\.");
+		region_x = Integer.parseInt(fparts[1]);
+		region_z = Integer.parseInt(fparts[2]);
+	}
+
+	private void openReadOnly() throws IOException {
+		offsets = new int[SECTOR_INTS];
+		chunkTimestamps = new int[SECTOR_INTS];
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		long length = file.length();
+		// the last chunk can end part way through its last sector, which is then cut short in the file
+		sectorCount = (int) ((length + SECTOR_BYTES - 1) / SECTOR_BYTES);
+		if (length >= SECTOR_BYTES * 2) {
+			readHeader();
 		}
-		for (int i = 0; i < SECTOR_INTS; ++i) {
-			int lastModValue = file.readInt();
-			chunkTimestamps[i] = lastModValue;
+	}
+
+	/** Make sure the file is open and the header loaded, for regions opened from an index. */
+	private void ensureLoaded() throws IOException {
+		if (loaded) return;
+		synchronized (this) {
+			if (loaded) return;
+			debugln("REGION LOAD " + fileName);
+			openReadOnly();
+			loaded = true;
 		}
+	}
 
+	/** Load the chunk offset and timestamp tables with one read. */
+	private void readHeader() throws IOException {
+		byte[] header = new byte[SECTOR_BYTES * 2];
+		read(0, header, 0, header.length);
+		IntBuffer ib = ByteBuffer.wrap(header).asIntBuffer();
+		ib.get(offsets);
+		ib.get(chunkTimestamps);
+	}
+
+	/**
+	 * @return A bitmap of which chunks exist in this region. Chunk (x, z) exists if bit <code>(i & 63)</code> of
+	 *         element <code>(i >> 6)</code> is set, where <code>i = x + z * 32</code>.
+	 */
+	public long[] getOccupancy() {
+		if (!loaded) return occupancy.clone();
+		long[] occ = new long[SECTOR_INTS / 64];
+		for (int i = 0; i < SECTOR_INTS; i++) {
+			if (hasChunk(i & 31, i >> 5)) occ[i >> 6] |= 1L << (i & 63);
+		}
+		return occ;
+	}
+
+	/**
+	 * Gets the last modification time of a chunk, as recorded in the region header.
+	 * 
+	 * @param x
+	 *            The region-local chunk x coordinate.
+	 * @param z
+	 *            The region-local chunk z coordinate.
+	 * @return The timestamp, in seconds since the epoch, or 0 if there is none.
+	 * @throws IOException
+	 *             If the header has to be loaded and cannot be.
+	 */
+	public int getTimestamp(int x, int z) throws IOException {
+		if (outOfBounds(x, z)) return 0;
+		if (readonly) {
+			ensureLoaded();
+			return chunkTimestamps[x + z * 32];
+		}
+		synchronized (this) {
+			return chunkTimestamps[x + z * 32];
+		}
+	}
+
+	/**
+	 * @return True if this region file was opened read-only.
+	 */
+	public boolean isReadOnly() {
+		return readonly;
 	}
 
 	/**
@@ -194,7 +335,8 @@ public class RegionFile {
 	}
 
 	/**
-	 * Gets the data for a chunk.
+	 * Gets the data for a chunk. A read-only region file is not locked at all, so any number of threads may read
+	 * chunks from the same region at once; in read-write mode the file is locked while the chunk is read.
 	 * 
 	 * @param x
 	 *            The region-local chunk x coordinate.
@@ -204,57 +346,306 @@ public class RegionFile {
 	 * @throws IOException
 	 *             If there is an error reading from the file or invalid data is encountered.
 	 */
-	public synchronized DataInputStream getChunkDataInputStream(int x, int z) throws IOException {
+	public DataInputStream getChunkDataInputStream(int x, int z) throws IOException {
 		if (outOfBounds(x, z)) {
 			debugln("READ", x, z, "out of bounds");
 			return null;
 		}
 
 		try {
-			int offset = getOffset(x, z);
-			if (offset == 0) {
-				// debugln("READ", x, z, "miss");
-				throw new IOException("Chunk does not exist " + x + " " + z);
-			}
+			ChunkDecompressor dec = ChunkDecompressor.get();
+			int numSectors = readChunkSectors(x, z, dec) & 0xFF;
+			byte[] data = dec.inputBuffer(numSectors * SECTOR_BYTES);
+			int length = chunkLength(x, z, data, 0, numSectors);
+
+			IChunkCodec codec = ChunkCodecs.get(data[4]);
+			if (codec == null) throw new IOException("Unknown version " + data[4] + " " + x + " " + z);
+			// debug("READ", x, z, " = found");
+			// the stream is read lazily, so it needs its own copy of the payload
+			byte[] payload = new byte[length - 1];
+			System.arraycopy(data, CHUNK_HEADER_SIZE, payload, 0, payload.length);
+			return new DataInputStream(codec.openStream(payload, 0, payload.length));
+		} catch (IOException e) {
+			throw new IOException("Failed to read chunk at " + x + "," + z, e);
+		}
+	}
 
-			int sectorNumber = offset >> 8;
-			int numSectors = offset & 0xFF;
+	/**
+	 * Reads and decompresses the data for a chunk in one step, using the (reusable) buffers and inflater of the
+	 * specified decompressor. Like <code>getChunkDataInputStream()</code>, this only locks the region file while
+	 * reading if it is open for writing, and never while decompressing.
+	 * 
+	 * @param x
+	 *            The region-local chunk x coordinate.
+	 * @param z
+	 *            The region-local chunk z coordinate.
+	 * @param dec
+	 *            The decompressor to use; should belong to the calling thread.
+	 * @return The length of the decompressed (NBT) chunk data, which is at the start of <code>dec.buffer()</code>.
+	 * @throws IOException
+	 *             If the coordinates are out of bounds, there is an error reading from the file or invalid data is
+	 *             encountered.
+	 */
+	public int readChunk(int x, int z, ChunkDecompressor dec) throws IOException {
+		if (outOfBounds(x, z)) throw new IOException("Chunk out of bounds " + x + " " + z);
+		try {
+			int numSectors = readChunkSectors(x, z, dec) & 0xFF;
+			byte[] data = dec.inputBuffer(numSectors * SECTOR_BYTES);
+			int length = chunkLength(x, z, data, 0, numSectors);
+			return dec.decompress(data[4], data, CHUNK_HEADER_SIZE, length - 1);
+		} catch (IOException e) {
+			throw new IOException("Failed to read chunk at " + x + "," + z, e);
+		}
+	}
 
-			if (sectorNumber + numSectors > sectorFree.size()) {
-				throw new IOException("Invalid sector " + x + " " + z);
-			}
+	/**
+	 * Gets the location of a chunk in the file, for callers that want to schedule their own reads (see
+	 * <code>readSectors()</code> and <code>decodeChunk()</code>). In read-write mode the location is only valid until
+	 * the lock is released, since writing a chunk can move it, so this is really only useful for read-only files.
+	 * 
+	 * @param x
+	 *            The region-local chunk x coordinate.
+	 * @param z
+	 *            The region-local chunk z coordinate.
+	 * @return The first sector of the chunk shifted left by 8, ORed with the number of sectors it occupies.
+	 * @throws IOException
+	 *             If the coordinates are out of bounds, the chunk does not exist or its location is invalid.
+	 */
+	public int getChunkLocation(int x, int z) throws IOException {
+		if (outOfBounds(x, z)) throw new IOException("Chunk out of bounds " + x + " " + z);
+		return lookupChunk(x, z);
+	}
 
-			file.seek(sectorNumber * SECTOR_BYTES);
-			int length = file.readInt();
+	/**
+	 * Reads a run of whole sectors. Like <code>readChunk()</code>, this only locks the region file if it is open for
+	 * writing. In read-only mode the read may come up short if the run includes the last sector of the file, which
+	 * does not have to be complete; callers should make sure the chunks they decode lie within what was read.
+	 * 
+	 * @param sector
+	 *            The first sector to read.
+	 * @param count
+	 *            The number of sectors to read.
+	 * @param buf
+	 *            Buffer to read into; must have room for <code>count * 4096</code> bytes from <code>off</code>.
+	 * @param off
+	 *            Offset in the buffer to read to.
+	 * @return The number of bytes read.
+	 * @throws IOException
+	 *             If there is an error reading from the file.
+	 */
+	public int readSectors(int sector, int count, byte[] buf, int off) throws IOException {
+		if (readonly) {
+			return readUpTo((long) sector * SECTOR_BYTES, buf, off, count * SECTOR_BYTES);
+		}
+		synchronized (this) {
+			read((long) sector * SECTOR_BYTES, buf, off, count * SECTOR_BYTES);
+			return count * SECTOR_BYTES;
+		}
+	}
 
-			if (length > SECTOR_BYTES * numSectors) {
-				throw new IOException("Invalid length " + x + " " + z + ": " + length + " > 4096 * " + numSectors);
+	/**
+	 * Decompresses the data for a chunk that has already been read from the file (with <code>readSectors()</code>).
+	 * 
+	 * @param x
+	 *            The region-local chunk x coordinate.
+	 * @param z
+	 *            The region-local chunk z coordinate.
+	 * @param data
+	 *            Buffer holding the sectors of the chunk.
+	 * @param off
+	 *            Offset of the first sector of the chunk in the buffer.
+	 * @param numSectors
+	 *            The number of sectors the chunk occupies.
+	 * @param dec
+	 *            The decompressor to use; should belong to the calling thread.
+	 * @return The length of the decompressed (NBT) chunk data, which is at the start of <code>dec.buffer()</code>.
+	 * @throws IOException
+	 *             If invalid data is encountered.
+	 */
+	public int decodeChunk(int x, int z, byte[] data, int off, int numSectors, ChunkDecompressor dec)
+			throws IOException {
+		try {
+			int length = chunkLength(x, z, data, off, numSectors);
+			return dec.decompress(data[off + 4], data, off + CHUNK_HEADER_SIZE, length - 1);
+		} catch (IOException e) {
+			throw new IOException("Failed to read chunk at " + x + "," + z, e);
+		}
+	}
+
+	/**
+	 * Look up an existing chunk and read all its sectors in one go into the decompressor's input buffer; the length
+	 * field tells us how much of it is real. In read-write mode this holds the lock for the read as well as the lookup,
+	 * since as soon as it is released a write can move the chunk and <code>flush()</code> can hand its old sectors to
+	 * another chunk.
+	 * 
+	 * @return The location of the chunk, as for <code>getChunkLocation()</code>.
+	 */
+	private int readChunkSectors(int x, int z, ChunkDecompressor dec) throws IOException {
+		if (readonly) {
+			int offset = lookupChunk(x, z);
+			int len = (offset & 0xFF) * SECTOR_BYTES;
+			byte[] data = dec.inputBuffer(len);
+			int n = readUpTo((long) (offset >> 8) * SECTOR_BYTES, data, 0, len);
+			// a short read is fine at the end of the file, as long as the chunk itself is all there
+			if (n < len && (n < CHUNK_HEADER_SIZE || chunkLength(x, z, data, 0, offset & 0xFF) + 4 > n)) {
+				throw new EOFException("Unexpected end of region file at " + ((long) (offset >> 8) * SECTOR_BYTES + n));
 			}
+			return offset;
+		}
+		synchronized (this) {
+			int offset = lookupChunk(x, z);
+			read((long) (offset >> 8) * SECTOR_BYTES, dec.inputBuffer((offset & 0xFF) * SECTOR_BYTES), 0,
+					(offset & 0xFF) * SECTOR_BYTES);
+			return offset;
+		}
+	}
 
-			byte version = file.readByte();
-			if (version == VERSION_GZIP) {
-				byte[] data = new byte[length - 1];
-				file.read(data);
-				DataInputStream ret = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)));
-				// debug("READ", x, z, " = found");
-				return ret;
-			} else if (version == VERSION_DEFLATE) {
-				byte[] data = new byte[length - 1];
-				file.read(data);
-				DataInputStream ret = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)));
-				// debug("READ", x, z, " = found");
-				return ret;
+	/**
+	 * Look up and sanity-check the offset of an existing chunk.
+	 */
+	private int lookupChunk(int x, int z) throws IOException {
+		int offset, nSectors;
+		if (readonly) {
+			ensureLoaded();
+			// header never changes, no locking needed at all
+			offset = getOffset(x, z);
+			nSectors = sectorCount;
+		} else {
+			synchronized (this) {
+				// the write path can move chunks around, so take a consistent snapshot (callers that go on to read the
+				// chunk must still be holding the lock)
+				offset = getOffset(x, z);
+				nSectors = sectorCount;
 			}
+		}
+		if (offset == 0) {
+			// debugln("READ", x, z, "miss");
+			throw new IOException("Chunk does not exist " + x + " " + z);
+		}
+		if ((offset >> 8) + (offset & 0xFF) > nSectors) {
+			throw new IOException("Invalid sector " + x + " " + z);
+		}
+		return offset;
+	}
 
-			throw new IOException("Unknown version " + x + " " + z);
-		} catch (IOException e) {
-			throw new IOException("Failed to read chunk at " + x + "," + z, e);
+	/**
+	 * Get and sanity-check the length field of chunk data that has been read into a buffer.
+	 */
+	static int chunkLength(int x, int z, byte[] data, int off, int numSectors) throws IOException {
+		int length = ((data[off] & 0xFF) << 24) | ((data[off + 1] & 0xFF) << 16) | ((data[off + 2] & 0xFF) << 8)
+				| (data[off + 3] & 0xFF);
+		if (length < 1 || length + 4 > SECTOR_BYTES * numSectors) {
+			throw new IOException("Invalid length " + x + " " + z + ": " + length + " > 4096 * " + numSectors);
+		}
+		return length;
+	}
+
+	/**
+	 * Set a limit on the rate at which all region files read from disk, so that reading a world does not starve other
+	 * users of the disk (like a running server).
+	 * 
+	 * @param limiter
+	 *            The limiter, or null for no limit.
+	 */
+	public static void setReadRateLimiter(IORateLimiter limiter) {
+		readLimiter = limiter;
+	}
+
+	public static IORateLimiter getReadRateLimiter() {
+		return readLimiter;
+	}
+
+	/**
+	 * Read from an absolute position in the file. Uses positional reads on the file channel, so it does not move the
+	 * file pointer and is safe to call from multiple threads at once.
+	 */
+	private void read(long pos, byte[] buf, int off, int len) throws IOException {
+		int n = readUpTo(pos, buf, off, len);
+		if (n < len) throw new EOFException("Unexpected end of region file at " + (pos + n));
+	}
+
+	/**
+	 * Like <code>read()</code>, but stops at the end of the file.
+	 * 
+	 * @return The number of bytes read.
+	 */
+	private int readUpTo(long pos, byte[] buf, int off, int len) throws IOException {
+		IORateLimiter limiter = readLimiter;
+		if (limiter != null) limiter.acquire(len);
+		ByteBuffer bb = ByteBuffer.wrap(buf, off, len);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, pos + (bb.position() - off)) < 0) break;
+		}
+		return bb.position() - off;
+	}
+
+	/**
+	 * Write to an absolute position in the file with positional writes on the file channel.
+	 */
+	private void writeFully(ByteBuffer bb, long pos) throws IOException {
+		long start = pos - bb.position();
+		while (bb.hasRemaining()) {
+			channel.write(bb, start + bb.position());
 		}
 	}
 
+	/**
+	 * Set the chunk version (compression type) that chunks written to this region file from now on are compressed
+	 * with. The default is version 2 (zlib).
+	 * 
+	 * @param version
+	 *            A version with a codec registered in <code>ChunkCodecs</code>.
+	 * @throws IllegalArgumentException
+	 *             If there is no codec for the version.
+	 */
+	public void setWriteVersion(int version) {
+		if (ChunkCodecs.get(version) == null) throw new IllegalArgumentException("Unknown version " + version);
+		writeVersion = version;
+	}
+
+	public int getWriteVersion() {
+		return writeVersion;
+	}
+
+	/**
+	 * Gets a stream to write the data for a chunk to. The chunk is compressed and written to the file when the stream
+	 * is closed. The (uncompressed) data is buffered in memory, and compression uses the calling thread's
+	 * <code>ChunkCompressor</code>, so the region file is only locked for the write itself.
+	 * 
+	 * @param x
+	 *            The region-local chunk x coordinate.
+	 * @param z
+	 *            The region-local chunk z coordinate.
+	 * @return A stream to which the (NBT) chunk data can be written, or null if the coordinates are out of bounds.
+	 * @throws IllegalStateException
+	 *             If this region file was opened read-only.
+	 */
 	public DataOutputStream getChunkDataOutputStream(int x, int z) {
+		if (readonly) throw new IllegalStateException("Region file opened read-only: " + fileName.getName());
 		if (outOfBounds(x, z)) return null;
-		return new DataOutputStream(new DeflaterOutputStream(new ChunkBuffer(x, z)));
+		return new DataOutputStream(new ChunkBuffer(x, z));
+	}
+
+	/**
+	 * Serialise, compress and write a chunk in one step, using the calling thread's <code>ChunkCompressor</code>. Like
+	 * <code>getChunkDataOutputStream()</code>, the region file is only locked for the write itself.
+	 * 
+	 * @param x
+	 *            The region-local chunk x coordinate.
+	 * @param z
+	 *            The region-local chunk z coordinate.
+	 * @param root
+	 *            The root tag of the chunk.
+	 * @throws IOException
+	 *             If the coordinates are out of bounds, the file was opened read-only or there is an error writing
+	 *             to the file.
+	 */
+	public void writeChunk(int x, int z, Tag root) throws IOException {
+		if (outOfBounds(x, z)) throw new IOException("Chunk out of bounds " + x + " " + z);
+		int version = writeVersion;
+		ChunkCompressor comp = ChunkCompressor.get();
+		int length = comp.compress(version, root);
+		write(x, z, version, comp.buffer(), length);
 	}
 
 	/**
@@ -271,12 +662,40 @@ public class RegionFile {
 		}
 
 		public void close() throws IOException {
-			RegionFile.this.write(x, z, buf, count);
+			int version = writeVersion;
+			ChunkCompressor comp = ChunkCompressor.get();
+			int length = comp.compress(version, buf, 0, count);
+			RegionFile.this.write(x, z, version, comp.buffer(), length);
 		}
 	}
 
 	/** write a chunk at (x,z) with length bytes of data to disk */
-	protected synchronized void write(int x, int z, byte[] data, int length) throws IOException {
+	protected void write(int x, int z, int version, byte[] data, int length) throws IOException {
+		writeChunkData(x, z, version, data, length, (int) (System.currentTimeMillis() / 1000L));
+	}
+
+	/**
+	 * Write already-compressed chunk data as is. Used to copy chunks between region files without recompressing them.
+	 * 
+	 * @param x
+	 *            The region-local chunk x coordinate.
+	 * @param z
+	 *            The region-local chunk z coordinate.
+	 * @param version
+	 *            The compression version of the data.
+	 * @param data
+	 *            The compressed chunk data.
+	 * @param length
+	 *            The length of the data.
+	 * @param timestamp
+	 *            The modification time to record for the chunk, in seconds.
+	 * @throws IOException
+	 *             If the file was opened read-only or there is an error writing to the file.
+	 */
+	public synchronized void writeChunkData(int x, int z, int version, byte[] data, int length, int timestamp)
+			throws IOException {
+		if (readonly) throw new IOException("Region file opened read-only: " + fileName.getName());
+		if (outOfBounds(x, z)) throw new IOException("Chunk out of bounds " + x + " " + z);
 
 		int offset = getOffset(x, z);
 		int sectorNumber = offset >> 8;
@@ -291,71 +710,66 @@ public class RegionFile {
 		if (sectorNumber != 0 && sectorsAllocated == sectorsNeeded) {
 			/* we can simply overwrite the old sectors */
 			debug("SAVE", x, z, length, "rewrite");
-			write(sectorNumber, data, length);
+			writeSectors(sectorNumber, sectorsNeeded, version, data, length);
 		} else {
 			/* we need to allocate new sectors */
 
-			/* mark the sectors previously used for this chunk as free */
-			for (int i = 0; i < sectorsAllocated; ++i) {
-				sectorFree.set(sectorNumber + i, true);
+			/*
+			 * the sectors previously used for this chunk can only be reused once the header no longer points at them,
+			 * so a crash before the next flush leaves the old data intact
+			 */
+			if (sectorsAllocated > 0 && sectorNumber + sectorsAllocated <= sectorCount) {
+				sectorReleased.set(sectorNumber, sectorNumber + sectorsAllocated);
 			}
 
 			/* scan for a free space large enough to store this chunk */
-			int runStart = sectorFree.indexOf(true);
-			int runLength = 0;
-			if (runStart != -1) {
-				for (int i = runStart; i < sectorFree.size(); ++i) {
-					if (runLength != 0) {
-						if (sectorFree.get(i))
-							runLength++;
-						else
-							runLength = 0;
-					} else if (sectorFree.get(i)) {
-						runStart = i;
-						runLength = 1;
-					}
-					if (runLength >= sectorsNeeded) {
-						break;
-					}
-				}
+			int runStart = sectorUsed.nextClearBit(2);
+			while (runStart < sectorCount) {
+				int runEnd = Math.min(sectorUsed.nextSetBit(runStart) & Integer.MAX_VALUE, sectorCount);
+				if (runEnd - runStart >= sectorsNeeded) break;
+				runStart = sectorUsed.nextClearBit(runEnd);
 			}
 
-			if (runLength >= sectorsNeeded) {
+			if (runStart + sectorsNeeded <= sectorCount) {
 				/* we found a free space large enough */
 				debug("SAVE", x, z, length, "reuse");
-				sectorNumber = runStart;
-				setOffset(x, z, (sectorNumber << 8) | sectorsNeeded);
-				for (int i = 0; i < sectorsNeeded; ++i) {
-					sectorFree.set(sectorNumber + i, false);
-				}
-				write(sectorNumber, data, length);
 			} else {
 				/*
-				 * no free space large enough found -- we need to grow the file
+				 * no free space large enough found -- we need to grow the file; the chunk write below does that
 				 */
 				debug("SAVE", x, z, length, "grow");
-				file.seek(file.length());
-				sectorNumber = sectorFree.size();
-				for (int i = 0; i < sectorsNeeded; ++i) {
-					file.write(emptySector);
-					sectorFree.add(false);
-				}
+				runStart = sectorCount;
+				sectorCount += sectorsNeeded;
 				sizeDelta += SECTOR_BYTES * sectorsNeeded;
-
-				write(sectorNumber, data, length);
-				setOffset(x, z, (sectorNumber << 8) | sectorsNeeded);
 			}
+			sectorNumber = runStart;
+			sectorUsed.set(sectorNumber, sectorNumber + sectorsNeeded);
+			writeSectors(sectorNumber, sectorsNeeded, version, data, length);
+			setOffset(x, z, (sectorNumber << 8) | sectorsNeeded);
 		}
-		setTimestamp(x, z, (int) (System.currentTimeMillis() / 1000L));
+		setTimestamp(x, z, timestamp);
 	}
 
-	/** Write chunk data to the region file at specified sector number. */
-	private void write(int sectorNumber, byte[] data, int length) throws IOException {
+	/**
+	 * Write chunk data to the region file at specified sector number, padded to whole sectors, with a single write.
+	 */
+	private void writeSectors(int sectorNumber, int sectorsNeeded, int version, byte[] data, int length)
+			throws IOException {
 		debugln(" " + sectorNumber);
-		file.seek(sectorNumber * SECTOR_BYTES);
-		file.writeInt(length + 1); // chunk length
-		file.writeByte(VERSION_DEFLATE); // chunk version number
-		file.write(data, 0, length); // chunk data
+		int size = sectorsNeeded * SECTOR_BYTES;
+		if (writeBuffer == null || writeBuffer.length < size) {
+			writeBuffer = new byte[Math.max(size, SECTOR_BYTES * 8)];
+		}
+		ByteBuffer bb = ByteBuffer.wrap(writeBuffer, 0, size);
+		bb.putInt(length + 1); // chunk length
+		bb.put((byte) version); // chunk version number
+		bb.put(data, 0, length); // chunk data
+		// zero the rest of the last sector
+		while (bb.hasRemaining()) {
+			bb.put((byte) 0);
+		}
+		bb.flip();
+		writeFully(bb, (long) sectorNumber * SECTOR_BYTES);
 	}
 
 	/** Is this an invalid chunk coordinate? */
@@ -363,29 +777,63 @@ public class RegionFile {
 		return x < 0 || x >= 32 || z < 0 || z >= 32;
 	}
 
-	public synchronized boolean hasChunk(int x, int z) {
+	public boolean hasChunk(int x, int z) {
 		if (outOfBounds(x, z)) return false;
-		return getOffset(x, z) != 0;
+		if (readonly) {
+			if (!loaded) {
+				int i = x + z * 32;
+				return (occupancy[i >> 6] & (1L << (i & 63))) != 0;
+			}
+			return getOffset(x, z) != 0;
+		}
+		synchronized (this) {
+			return getOffset(x, z) != 0;
+		}
 	}
 
 	private int getOffset(int x, int z) {
 		return offsets[x + z * 32];
 	}
 
-	private void setOffset(int x, int z, int offset) throws IOException {
+	private void setOffset(int x, int z, int offset) {
 		offsets[x + z * 32] = offset;
-		file.seek((x + z * 32) * 4);
-		file.writeInt(offset);
+		headerDirty = true;
 	}
 
-	private void setTimestamp(int x, int z, int value) throws IOException {
+	private void setTimestamp(int x, int z, int value) {
 		chunkTimestamps[x + z * 32] = value;
-		file.seek(SECTOR_BYTES + (x + z * 32) * 4);
-		file.writeInt(value);
+		headerDirty = true;
+	}
+
+	/**
+	 * Write any changes to the chunk offset and timestamp tables to the file, in a single write. Until this is
+	 * called (or the file is closed), chunks written since the last flush are not visible to other programs reading
+	 * the file, and the sectors they replaced are not reused.
+	 * 
+	 * @throws IOException
+	 *             If there is an error writing to the file.
+	 */
+	public synchronized void flush() throws IOException {
+		if (readonly || !headerDirty) return;
+		ByteBuffer bb = ByteBuffer.allocate(SECTOR_BYTES * 2);
+		IntBuffer ib = bb.asIntBuffer();
+		ib.put(offsets);
+		ib.put(chunkTimestamps);
+		writeFully(bb, 0);
+		headerDirty = false;
+		sectorUsed.andNot(sectorReleased);
+		sectorReleased.clear();
 	}
 
-	public void close() throws IOException {
-		file.close();
+	public synchronized void close() throws IOException {
+		// regions opened from an index may never have been opened at all
+		if (file != null) {
+			try {
+				flush();
+			} finally {
+				file.close();
+			}
+		}
 	}
 
 	@Override
@@ -3,10 +3,20 @@ package minespy;
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
@@ -14,6 +24,9 @@ import java.util.concurrent.locks.ReentrantLock;
 
 
 import minespy.chunkfilters.IChunkFilter;
+import minespy.colorproviders.IBlockColorProvider;
+import minespy.nbt.ArrayPool;
+import minespy.nbt.IArrayAllocator;
 import minespy.nbt.Tag;
 
 public class RegionFileWorld implements IWorld {
@@ -29,31 +42,109 @@ public class RegionFileWorld implements IWorld {
 	private final Map<ChunkCoord, ChunkReference> m_crmap = new HashMap<ChunkCoord, ChunkReference>();
 	private final IChunk[] m_chunks;
 	private final AtomicInteger[] m_chunk_atomic_refcount;
+	// the unfiltered chunks that were acquired, for unpinning; set and cleared with the refcount, under the lock of the
+	// chunk's ChunkReference
+	private final IChunk[] m_acquired;
 
 	private IChunkFilter m_cf = null;
 
+	private volatile int m_prefetch_distance = 0;
+	private volatile LoadOptions m_load_options = new LoadOptions(false, null, null, null);
+	private final List<Prefetcher> m_prefetchers = new ArrayList<Prefetcher>();
+
 	public RegionFileWorld(File[] regionfiles_) throws IOException {
+		this(regionfiles_, null);
+	}
+
+	/**
+	 * Open a world from its region files, optionally using a world index to avoid reading the headers of regions that
+	 * have not changed since the index was last written. The index is updated if anything has changed.
+	 * 
+	 * @param regionfiles_
+	 *            The region files.
+	 * @param indexfile_
+	 *            The world index file, or null to not use one.
+	 * @throws IOException
+	 *             If a region file cannot be opened.
+	 */
+	public RegionFileWorld(File[] regionfiles_, File indexfile_) throws IOException {
 		MineSpy.log("Opening region files...");
 
-		for (File f : regionfiles_) {
-			m_rflist.add(new RegionFile(f));
-		}
+		final WorldIndex index = indexfile_ == null ? null : new WorldIndex(indexfile_);
+		final AtomicInteger index_hits = new AtomicInteger(0);
+
+		// open and scan the region headers in parallel, then merge the results in file order
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			List<Future<RegionScan>> scans = new ArrayList<Future<RegionScan>>(regionfiles_.length);
+			for (final File f : regionfiles_) {
+				scans.add(pool.submit(new Callable<RegionScan>() {
+
+					@Override
+					public RegionScan call() throws IOException {
+						if (index == null) return new RegionScan(new RegionFile(f, true), null);
+						// stat before reading the header, so a change while we read it shows up next time
+						long size = f.length();
+						long mtime = f.lastModified();
+						WorldIndex.Entry e = index.get(f.getName(), size, mtime);
+						RegionScan rs;
+						if (e != null) {
+							rs = new RegionScan(new RegionFile(f, mtime, e.occupancy()), e);
+							index_hits.incrementAndGet();
+						} else {
+							rs = new RegionScan(new RegionFile(f, true), null);
+						}
+						index.put(f.getName(), rs.indexEntry(size, mtime));
+						return rs;
+					}
 
-		MineSpy.log("Calculating map size...");
+				}));
+			}
 
-		for (RegionFile rf : m_rflist) {
-			for (int r_cx = 0; r_cx < 32; r_cx++) {
-				for (int r_cz = 0; r_cz < 32; r_cz++) {
-					ChunkCoord cc = new ChunkCoord(rf.getRegionX() * 32 + r_cx, rf.getRegionZ() * 32 + r_cz);
-					if (rf.hasChunk(r_cx, r_cz)) {
-						m_crmap.put(cc, new ChunkReference(rf, cc));
-						int thischunk_min_x = cc.x() * 16;
-						int thischunk_min_z = cc.z() * 16;
-						if (thischunk_min_x < m_min_x) m_min_x = thischunk_min_x;
-						if (thischunk_min_z < m_min_z) m_min_z = thischunk_min_z;
-						if (thischunk_min_x + 16 > m_max_x) m_max_x = thischunk_min_x + 16;
-						if (thischunk_min_z + 16 > m_max_z) m_max_z = thischunk_min_z + 16;
+			MineSpy.log("Calculating map size...");
+
+			IOException ex = null;
+			for (Future<RegionScan> fs : scans) {
+				RegionScan rs;
+				try {
+					rs = fs.get();
+				} catch (ExecutionException e) {
+					if (ex == null) {
+						ex = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(
+								e.getCause());
 					}
+					continue;
+				} catch (InterruptedException e) {
+					if (ex == null) ex = new IOException("Interrupted while opening region files.", e);
+					continue;
+				}
+				m_rflist.add(rs.m_rf);
+				for (ChunkReference cr : rs.m_crs) {
+					m_crmap.put(cr.m_cc, cr);
+				}
+				if (rs.m_min_x < m_min_x) m_min_x = rs.m_min_x;
+				if (rs.m_min_z < m_min_z) m_min_z = rs.m_min_z;
+				if (rs.m_max_x > m_max_x) m_max_x = rs.m_max_x;
+				if (rs.m_max_z > m_max_z) m_max_z = rs.m_max_z;
+			}
+
+			if (ex != null) {
+				// don't leak the ones that did open
+				close();
+				throw ex;
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if (index != null) {
+			MineSpy.logf("%d of %d region(s) opened from world index.\n", index_hits.get(), regionfiles_.length);
+			if (index.isDirty()) {
+				try {
+					index.save();
+				} catch (IOException e) {
+					// probably a read-only world, not fatal
+					MineSpy.log("Unable to write world index: " + e.getMessage());
 				}
 			}
 		}
@@ -71,6 +162,7 @@ public class RegionFileWorld implements IWorld {
 
 		m_chunks = new IChunk[m_size_cz * m_size_cx];
 		m_chunk_atomic_refcount = new AtomicInteger[m_size_cz * m_size_cx];
+		m_acquired = new IChunk[m_size_cz * m_size_cx];
 
 		// fill the atomic refcount array with objects...
 		for (int i = 0; i < m_chunk_atomic_refcount.length; i++) {
@@ -113,6 +205,23 @@ public class RegionFileWorld implements IWorld {
 		return m_crmap.keySet().size();
 	}
 
+	@Override
+	public Set<ChunkCoord> chunks() {
+		return Collections.unmodifiableSet(m_crmap.keySet());
+	}
+
+	@Override
+	public int getChunkTimestamp(ChunkCoord cc) {
+		ChunkReference cr = m_crmap.get(cc);
+		if (cr == null) return 0;
+		try {
+			return cr.m_rf.getTimestamp(cc.x() & 31, cc.z() & 31);
+		} catch (IOException e) {
+			// loading the chunk will fail (and be reported) too
+			return 0;
+		}
+	}
+
 	@Override
 	public void acquireChunks(ChunkCoord... ccs) {
 		boolean chunks_to_acquire;
@@ -121,14 +230,23 @@ public class RegionFileWorld implements IWorld {
 		do {
 			chunks_to_acquire = false;
 			for (int i = 0; i < ccs.length; i++) {
+				// the chunk is pinned each time it is got, so only get it once
+				if (acquired[i]) continue;
 				ChunkCoord cc = ccs[i];
 				ChunkReference cr = m_crmap.get(cc);
 				if (cr == null) continue;
 				int index = (cc.z() - m_min_cz) * m_size_cx + (cc.x() - m_min_cx);
-				IChunk c = cr.tryGet();
-				if (c != null && acquired[i] == false) {
+				IChunk c = cr.tryAcquire(m_load_options);
+				if (c != null) {
 					acquired[i] = true;
-					if (m_chunk_atomic_refcount[index].getAndIncrement() == 0) {
+					boolean first;
+					synchronized (cr) {
+						// while it is acquired, this keeps a heap chunk from being collected (a slab chunk is kept
+						// by its pin), so everyone who acquires it gets the same chunk
+						m_acquired[index] = c;
+						first = m_chunk_atomic_refcount[index].getAndIncrement() == 0;
+					}
+					if (first) {
 						// were no references. need to put chunk in table
 						while (m_chunks[index] != null) {
 							// wait for previous unload to finish
@@ -137,10 +255,9 @@ public class RegionFileWorld implements IWorld {
 						}
 						m_chunks[index] = m_cf == null ? c : m_cf.filter(c);
 					}
-				} else if (c == null) {
+				} else {
 					chunks_to_acquire = true;
 				}
-				// the 'else' case is where we were able to get it but already have
 			}
 			// this will (and is intended to) burn cpu until all chunks are loaded
 		} while (chunks_to_acquire);
@@ -150,17 +267,121 @@ public class RegionFileWorld implements IWorld {
 	public void releaseChunks(ChunkCoord... ccs) {
 		for (ChunkCoord cc : ccs) {
 			ChunkReference cr = m_crmap.get(cc);
-			if (cr == null) return;
+			if (cr == null) continue;
 			int index = (cc.z() - m_min_cz) * m_size_cx + (cc.x() - m_min_cx);
-			if (m_chunk_atomic_refcount[index].decrementAndGet() == 0) {
+			IChunk c;
+			boolean last;
+			synchronized (cr) {
+				c = m_acquired[index];
+				last = m_chunk_atomic_refcount[index].decrementAndGet() == 0;
+				if (last) m_acquired[index] = null;
+			}
+			if (last) {
 				m_chunks[index] = null;
 			}
+			// after it is out of the table, as its slots may be recycled now
+			if (c instanceof SlabChunk) ((SlabChunk) c).unpin();
 		}
 	}
 
 	@Override
 	public IChunkCoordIterator iterator() {
-		return new ChunkCoordIterator();
+		return new ChunkCoordIterator(null, m_prefetch_distance);
+	}
+
+	@Override
+	public IChunkCoordIterator iterator(Set<ChunkCoord> ccs) {
+		if (ccs == null) throw new NullPointerException();
+		return new ChunkCoordIterator(ccs, m_prefetch_distance);
+	}
+
+	/**
+	 * Set how many chunks ahead of an iterator's position a background thread should read and decompress chunk data,
+	 * so that it is already in memory when a render thread loads the chunk. Affects iterators created after this
+	 * call. Zero disables prefetching, and is the default here; presets turn it on (see
+	 * <code>Preset.getPrefetch()</code>). The background thread stops when the iterator is closed or runs out of
+	 * chunks.
+	 * 
+	 * @param distance
+	 *            Number of chunks to prefetch ahead.
+	 */
+	public void setPrefetchDistance(int distance) {
+		if (distance < 0) throw new IllegalArgumentException("Negative prefetch distance.");
+		m_prefetch_distance = distance;
+	}
+
+	/**
+	 * Set whether chunks loaded from now on are stored column by column (see <code>ColumnChunk</code>), which is faster
+	 * for renders that only scan columns from the top down. The default is by section (see <code>Chunk</code>).
+	 */
+	public void setColumnLayout(boolean b) {
+		LoadOptions lo = m_load_options;
+		m_load_options = new LoadOptions(b, lo.m_cp, lo.m_alphas, lo.m_store);
+	}
+
+	/**
+	 * Set the alpha values that chunks loaded from now on summarise, as well as the heights they always summarise, so
+	 * that shaders don't have to scan columns for them (see <code>ColumnSummary</code>).
+	 * 
+	 * @param cp
+	 *            The colour provider the shaders will use, or null to not summarise alpha values.
+	 * @param alphas
+	 *            The alpha values, e.g. from <code>IMapShaderFactory.getAlphaThresholds()</code>.
+	 */
+	public void setColumnSummary(IBlockColorProvider cp, int[] alphas) {
+		LoadOptions lo = m_load_options;
+		m_load_options = new LoadOptions(lo.m_columns, cp, alphas, lo.m_store);
+	}
+
+	/**
+	 * Set how much memory outside the Java heap chunks loaded from now on may use for their voxels (see
+	 * <code>SlabChunkStore</code>). Chunks that are released are kept there until the space is needed, instead of being
+	 * left to the garbage collector. The chunks are stored by section, whatever <code>setColumnLayout()</code> says.
+	 * Chunks that don't fit are loaded on the heap as usual. Zero (the default) loads all chunks on the heap.
+	 * 
+	 * @param bytes
+	 *            Size of the store.
+	 */
+	public void setOffHeapChunks(long bytes) {
+		if (bytes < 0) throw new IllegalArgumentException("Negative chunk store size.");
+		LoadOptions lo = m_load_options;
+		m_load_options = new LoadOptions(lo.m_columns, lo.m_cp, lo.m_alphas, bytes > 0 ? new SlabChunkStore(bytes)
+				: null);
+	}
+
+	/**
+	 * How chunks are built when they are loaded. Immutable, so that it changes in one go.
+	 */
+	private static final class LoadOptions {
+
+		private final boolean m_columns;
+		private final IBlockColorProvider m_cp;
+		private final int[] m_alphas;
+		private final SlabChunkStore m_store;
+
+		public LoadOptions(boolean columns_, IBlockColorProvider cp_, int[] alphas_, SlabChunkStore store_) {
+			m_columns = columns_;
+			m_cp = cp_;
+			m_alphas = alphas_ == null ? null : alphas_.clone();
+			m_store = store_;
+		}
+
+		/**
+		 * Build and summarise a chunk from its tag, giving the section arrays it copies back to a pool. A chunk in the
+		 * slab store comes back pinned.
+		 */
+		public IChunk build(Tag root, ArrayPool pool) {
+			if (m_store != null) {
+				SlabChunk c = m_store.build(root, pool, m_cp, m_alphas);
+				if (c != null) return c;
+				// store is full of chunks in use
+			}
+			if (m_columns) {
+				return new ColumnChunk(root, pool, m_cp, m_alphas);
+			}
+			return new Chunk(root, pool, m_cp, m_alphas);
+		}
+
 	}
 
 	@Override
@@ -179,11 +400,60 @@ public class RegionFileWorld implements IWorld {
 		m_cf = cf;
 	}
 	
+	/**
+	 * The chunks present in one region file and their bounds, found by scanning its header.
+	 */
+	private static class RegionScan {
+
+		private final RegionFile m_rf;
+		private final List<ChunkReference> m_crs = new ArrayList<ChunkReference>();
+		private int m_min_x = Integer.MAX_VALUE;
+		private int m_min_z = Integer.MAX_VALUE;
+		private int m_max_x = Integer.MIN_VALUE;
+		private int m_max_z = Integer.MIN_VALUE;
+
+		/**
+		 * @param e
+		 *            Index entry for the region to take the bounds from, or null to compute them.
+		 */
+		public RegionScan(RegionFile rf_, WorldIndex.Entry e) {
+			m_rf = rf_;
+			for (int r_cx = 0; r_cx < 32; r_cx++) {
+				for (int r_cz = 0; r_cz < 32; r_cz++) {
+					if (m_rf.hasChunk(r_cx, r_cz)) {
+						ChunkCoord cc = new ChunkCoord(m_rf.getRegionX() * 32 + r_cx, m_rf.getRegionZ() * 32 + r_cz);
+						m_crs.add(new ChunkReference(m_rf, cc));
+						if (e != null) continue;
+						int thischunk_min_x = cc.x() * 16;
+						int thischunk_min_z = cc.z() * 16;
+						if (thischunk_min_x < m_min_x) m_min_x = thischunk_min_x;
+						if (thischunk_min_z < m_min_z) m_min_z = thischunk_min_z;
+						if (thischunk_min_x + 16 > m_max_x) m_max_x = thischunk_min_x + 16;
+						if (thischunk_min_z + 16 > m_max_z) m_max_z = thischunk_min_z + 16;
+					}
+				}
+			}
+			if (e != null) {
+				m_min_x = e.minX();
+				m_min_z = e.minZ();
+				m_max_x = e.maxX();
+				m_max_z = e.maxZ();
+			}
+		}
+
+		public WorldIndex.Entry indexEntry(long size, long mtime) {
+			return new WorldIndex.Entry(size, mtime, m_rf.getOccupancy(), m_min_x, m_min_z, m_max_x, m_max_z);
+		}
+
+	}
+
 	private static class ChunkReference {
 
 		private final RegionFile m_rf;
 		private final ChunkCoord m_cc;
-		private volatile SoftReference<Chunk> m_ref = new SoftReference<Chunk>(null);
+		private volatile SoftReference<IChunk> m_ref = new SoftReference<IChunk>(null);
+		// decompressed chunk data read ahead by a prefetcher, consumed by the next load
+		private volatile byte[] m_prefetched = null;
 
 		private static AtomicLong m_loadtime = new AtomicLong(0);
 
@@ -198,15 +468,22 @@ public class RegionFileWorld implements IWorld {
 			return m_loadtime.get();
 		}
 
-		public Chunk get() {
+		/**
+		 * Get the chunk, loading it if need be. A chunk in a <code>SlabChunkStore</code> is returned pinned, so that it
+		 * is not recycled until it is unpinned.
+		 * 
+		 * @param lo
+		 *            How to build the chunk if it has to be loaded.
+		 */
+		public IChunk acquire(LoadOptions lo) {
 			// looks like i dont really need this method anymore
 			// avoid synchro overhead for retrieval and make loading lazy
-			Chunk c = m_ref.get();
+			IChunk c = pinCached();
 			if (c == null) {
 				// chunk not loaded or chunk cleared by gc
 				m_loadlock.lock();
 				try {
-					c = loadChunk();
+					c = loadChunk(lo);
 				} finally {
 					m_loadlock.unlock();
 				}
@@ -214,14 +491,21 @@ public class RegionFileWorld implements IWorld {
 			return c;
 		}
 
-		public Chunk tryGet() {
+		/**
+		 * Like <code>acquire()</code>, but doesn't wait for another thread that is loading the chunk.
+		 * 
+		 * @param lo
+		 *            How to build the chunk if it has to be loaded.
+		 * @return The chunk, or null if another thread is loading it.
+		 */
+		public IChunk tryAcquire(LoadOptions lo) {
 			// avoid synchro overhead for retrieval and make loading lazy
-			Chunk c = m_ref.get();
+			IChunk c = pinCached();
 			if (c == null) {
 				// chunk not loaded or chunk cleared by gc
 				if (m_loadlock.tryLock()) {
 					try {
-						c = loadChunk();
+						c = loadChunk(lo);
 					} finally {
 						m_loadlock.unlock();
 					}
@@ -230,18 +514,78 @@ public class RegionFileWorld implements IWorld {
 			return c;
 		}
 
-		private Chunk loadChunk() {
-			Chunk c = m_ref.get();
+		/**
+		 * @return The loaded chunk, pinned if it is in a <code>SlabChunkStore</code>, or null if it is not loaded, was
+		 *         cleared by the gc or was recycled by its store.
+		 */
+		private IChunk pinCached() {
+			IChunk c = m_ref.get();
+			if (c instanceof SlabChunk && !((SlabChunk) c).pin()) return null;
+			return c;
+		}
+
+		/**
+		 * @return The loaded chunk, or null if it is not loaded, was cleared by the gc or was recycled by its store.
+		 */
+		private IChunk cached() {
+			IChunk c = m_ref.get();
+			if (c instanceof SlabChunk && ((SlabChunk) c).isRecycled()) return null;
+			return c;
+		}
+
+		/**
+		 * @return True if this chunk is neither loaded nor prefetched.
+		 */
+		public boolean needsPrefetch() {
+			return cached() == null && m_prefetched == null;
+		}
+
+		/**
+		 * Decompress the data for this chunk ahead of time from sectors that have already been read, unless it is
+		 * already loaded.
+		 */
+		public void prefetch(byte[] data, int off, int numSectors, ChunkDecompressor dec) throws IOException {
+			if (!needsPrefetch()) return;
+			int length = m_rf.decodeChunk(m_cc.x() & 31, m_cc.z() & 31, data, off, numSectors, dec);
+			m_prefetched = Arrays.copyOf(dec.buffer(), length);
+			// if it was loaded while we were busy, nobody is going to consume this
+			if (cached() != null) m_prefetched = null;
+		}
+
+		private IChunk loadChunk(LoadOptions lo) {
+			IChunk c = pinCached();
 			if (c != null) return c;
 			long tstart = System.nanoTime();
 			try {
-				c = new Chunk(Tag.parse(m_rf.getChunkDataInputStream(m_cc.x() & 31, m_cc.z() & 31)));
+				byte[] data = m_prefetched;
+				int length;
+				if (data != null) {
+					m_prefetched = null;
+					length = data.length;
+				} else {
+					ChunkDecompressor dec = ChunkDecompressor.get();
+					length = m_rf.readChunk(m_cc.x() & 31, m_cc.z() & 31, dec);
+					data = dec.buffer();
+				}
+				// the section arrays the chunk copies can be reused for the next one
+				ArrayPool pool = ArrayPool.get();
+				IArrayAllocator prev = Tag.setArrayAllocator(pool);
+				Tag root;
+				try {
+					root = Tag.parse(ByteBuffer.wrap(data, 0, length), Chunk.PROJECTION);
+				} finally {
+					Tag.setArrayAllocator(prev);
+				}
+				c = lo.build(root, pool);
 			} catch (IOException e) {
 				// well shit.
 				e.printStackTrace();
 				c = Chunk.BLANK;
 			}
-			m_ref = new SoftReference<Chunk>(c);
+			m_ref = new SoftReference<IChunk>(c);
+			// a prefetch that finished after we looked is not needed any more; if one finishes after this, it sees
+			// the chunk is loaded and drops its data itself
+			m_prefetched = null;
 			m_loadtime.addAndGet(System.nanoTime() - tstart);
 			return c;
 		}
@@ -254,17 +598,37 @@ public class RegionFileWorld implements IWorld {
 		private volatile int m_r_cx = 0;
 		private volatile int m_r_cz = 0;
 
-		public ChunkCoordIterator() {
-
+		// only return these chunks, if not null
+		private final Set<ChunkCoord> m_ccs;
+		private final Prefetcher m_prefetcher;
+		private boolean m_closed = false;
+
+		public ChunkCoordIterator(Set<ChunkCoord> ccs_, int prefetch_distance) {
+			m_ccs = ccs_;
+			if (prefetch_distance > 0) {
+				m_prefetcher = new Prefetcher(m_ccs, prefetch_distance);
+				synchronized (m_prefetchers) {
+					m_prefetchers.add(m_prefetcher);
+				}
+				m_prefetcher.start();
+			} else {
+				m_prefetcher = null;
+			}
 		}
 
 		@Override
 		public synchronized ChunkCoord next() {
+			if (m_closed) throw new NoMoreChunksException();
 			while (m_rf_index < m_rflist.size()) {
 				RegionFile rf = m_rflist.get(m_rf_index);
 				try {
 					if (rf.hasChunk(m_r_cx, m_r_cz)) {
-						return new ChunkCoord(rf.getRegionX() * 32 + m_r_cx, rf.getRegionZ() * 32 + m_r_cz);
+						ChunkCoord cc = new ChunkCoord(rf.getRegionX() * 32 + m_r_cx, rf.getRegionZ() * 32 + m_r_cz);
+						if (m_ccs == null || m_ccs.contains(cc)) {
+							// let the prefetcher move one chunk further ahead
+							if (m_prefetcher != null) m_prefetcher.advance();
+							return cc;
+						}
 					}
 				} finally {
 					// move to the next (possible) chunk even if we found one to return
@@ -279,13 +643,186 @@ public class RegionFileWorld implements IWorld {
 					}
 				}
 			}
+			// nothing left to prefetch for
+			close();
 			throw new NoMoreChunksException();
 		}
 
+		@Override
+		public synchronized void close() {
+			if (m_closed) return;
+			m_closed = true;
+			if (m_prefetcher != null) {
+				// its own iterator doesn't prefetch, so this doesn't wait for the lock we hold
+				m_prefetcher.finish();
+				synchronized (m_prefetchers) {
+					m_prefetchers.remove(m_prefetcher);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Reads chunk data ahead of an iterator. Chunks are taken from the iteration order in batches of half the prefetch
+	 * distance; within a batch, the chunks of each region are read in file order, with chunks that are (nearly)
+	 * adjacent in the file merged into one large read. This turns the random access of the iteration order into a few
+	 * mostly sequential reads per region.
+	 */
+	private class Prefetcher extends Thread {
+
+		// sectors of unwanted data worth reading to avoid a separate read
+		private static final int MAX_GAP_SECTORS = 8;
+		// largest single read (4MB)
+		private static final int MAX_RUN_SECTORS = 1024;
+
+		private final Set<ChunkCoord> m_ccs;
+		// one permit per chunk we are allowed to be ahead of the iterator
+		private final Semaphore m_ahead;
+		private final int m_batch;
+		private volatile boolean m_stop = false;
+		private byte[] m_buf = new byte[64 * 4096];
+
+		public Prefetcher(Set<ChunkCoord> ccs_, int distance) {
+			super("MineSpy-Prefetch");
+			setDaemon(true);
+			m_ccs = ccs_;
+			m_ahead = new Semaphore(distance);
+			m_batch = Math.max(1, distance / 2);
+		}
+
+		public void advance() {
+			m_ahead.release();
+		}
+
+		public void finish() {
+			m_stop = true;
+			// wake it up if it is waiting for the iterator to catch up
+			m_ahead.release(m_batch);
+			// don't interrupt: that would close the region file channels under it
+			while (isAlive()) {
+				try {
+					join();
+				} catch (InterruptedException e) {
+
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			IChunkCoordIterator it = new ChunkCoordIterator(m_ccs, 0);
+			ChunkDecompressor dec = ChunkDecompressor.get();
+			List<ChunkReference> batch = new ArrayList<ChunkReference>(m_batch);
+			boolean more = true;
+			try {
+				while (more && !m_stop) {
+					m_ahead.acquire(m_batch);
+					if (m_stop) break;
+					batch.clear();
+					try {
+						while (batch.size() < m_batch) {
+							batch.add(m_crmap.get(it.next()));
+						}
+					} catch (NoMoreChunksException e) {
+						more = false;
+					}
+					// the iteration order visits one region at a time
+					int i = 0;
+					while (i < batch.size() && !m_stop) {
+						int j = i + 1;
+						while (j < batch.size() && batch.get(j).m_rf == batch.get(i).m_rf) {
+							j++;
+						}
+						fetchRegion(batch.subList(i, j), dec);
+						i = j;
+					}
+				}
+			} catch (InterruptedException e) {
+				// stop
+			}
+		}
+
+		private void fetchRegion(List<ChunkReference> crs, ChunkDecompressor dec) {
+			RegionFile rf = crs.get(0).m_rf;
+			List<PendingRead> reads = new ArrayList<PendingRead>(crs.size());
+			for (ChunkReference cr : crs) {
+				if (!cr.needsPrefetch()) continue;
+				try {
+					reads.add(new PendingRead(cr, rf.getChunkLocation(cr.m_cc.x() & 31, cr.m_cc.z() & 31)));
+				} catch (IOException e) {
+					// leave it for the render thread to load (and report)
+				}
+			}
+			Collections.sort(reads);
+			int i = 0;
+			while (i < reads.size() && !m_stop) {
+				// extend the run while the next chunk is close enough and the run is not too big
+				int start = reads.get(i).m_sector;
+				int end = reads.get(i).end();
+				int j = i + 1;
+				while (j < reads.size()) {
+					PendingRead pr = reads.get(j);
+					if (pr.m_sector > end + MAX_GAP_SECTORS) break;
+					if (Math.max(end, pr.end()) - start > MAX_RUN_SECTORS) break;
+					end = Math.max(end, pr.end());
+					j++;
+				}
+				int count = end - start;
+				if (m_buf.length < count * 4096) {
+					m_buf = new byte[count * 4096];
+				}
+				try {
+					int n = rf.readSectors(start, count, m_buf, 0);
+					for (PendingRead pr : reads.subList(i, j)) {
+						// cut short by the end of the file; let the render thread read it
+						if ((pr.end() - start) * 4096 > n) continue;
+						try {
+							pr.m_cr.prefetch(m_buf, (pr.m_sector - start) * 4096, pr.m_count, dec);
+						} catch (IOException e) {
+							// leave it for the render thread to load (and report)
+						}
+					}
+				} catch (IOException e) {
+					// leave them for the render threads to load (and report)
+				}
+				i = j;
+			}
+		}
+
+	}
+
+	private static class PendingRead implements Comparable<PendingRead> {
+
+		public final ChunkReference m_cr;
+		public final int m_sector;
+		public final int m_count;
+
+		public PendingRead(ChunkReference cr_, int location) {
+			m_cr = cr_;
+			m_sector = location >> 8;
+			m_count = location & 0xFF;
+		}
+
+		public int end() {
+			return m_sector + m_count;
+		}
+
+		@Override
+		public int compareTo(PendingRead other) {
+			return m_sector < other.m_sector ? -1 : (m_sector == other.m_sector ? 0 : 1);
+		}
+
 	}
 
 	@Override
 	public void close() {
+		synchronized (m_prefetchers) {
+			for (Prefetcher p : m_prefetchers) {
+				p.finish();
+			}
+			m_prefetchers.clear();
+		}
 		for (RegionFile rf : m_rflist) {
 			try {
 				rf.close();
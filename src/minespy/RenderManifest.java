@@ -0,0 +1,160 @@
+package minespy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Record of what went into a rendered image: the render settings, the world bounds and the timestamp of every chunk.
+ * Comparing the manifest of the last render with one for the world as it is now gives the chunks that need to be
+ * rendered again.
+ */
+public class RenderManifest {
+
+	// "MSRM"
+	private static final int MAGIC = 0x4D53524D;
+	private static final int VERSION = 1;
+
+	private final String m_key;
+	private final int m_min_x, m_min_z, m_size_x, m_size_z;
+	private final Map<ChunkCoord, Integer> m_timestamps;
+
+	private RenderManifest(String key_, int min_x_, int min_z_, int size_x_, int size_z_,
+			Map<ChunkCoord, Integer> timestamps_) {
+		m_key = key_;
+		m_min_x = min_x_;
+		m_min_z = min_z_;
+		m_size_x = size_x_;
+		m_size_z = size_z_;
+		m_timestamps = timestamps_;
+	}
+
+	/**
+	 * Create a manifest for the current state of a world.
+	 * 
+	 * @param key
+	 *            Identifies the render settings; images rendered with different keys are never combined.
+	 * @param world
+	 *            The world.
+	 */
+	public static RenderManifest create(String key, IWorld world) {
+		Map<ChunkCoord, Integer> timestamps = new HashMap<ChunkCoord, Integer>();
+		for (ChunkCoord cc : world.chunks()) {
+			timestamps.put(cc, world.getChunkTimestamp(cc));
+		}
+		return new RenderManifest(key, world.minX(), world.minZ(), world.sizeX(), world.sizeZ(), timestamps);
+	}
+
+	/**
+	 * Load a manifest.
+	 * 
+	 * @param file
+	 *            The manifest file.
+	 * @return The manifest, or null if the file is missing or not valid.
+	 */
+	public static RenderManifest load(File file) {
+		if (!file.exists()) return null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+				String key = in.readUTF();
+				int min_x = in.readInt();
+				int min_z = in.readInt();
+				int size_x = in.readInt();
+				int size_z = in.readInt();
+				int count = in.readInt();
+				Map<ChunkCoord, Integer> timestamps = new HashMap<ChunkCoord, Integer>();
+				for (int i = 0; i < count; i++) {
+					int cx = in.readInt();
+					int cz = in.readInt();
+					timestamps.put(new ChunkCoord(cx, cz), in.readInt());
+				}
+				return new RenderManifest(key, min_x, min_z, size_x, size_z, timestamps);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			MineSpy.log("Unable to read render manifest '" + file.getName() + "', ignoring it.");
+			return null;
+		}
+	}
+
+	/**
+	 * Write this manifest to a file, replacing it.
+	 * 
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public void save(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(m_key);
+			out.writeInt(m_min_x);
+			out.writeInt(m_min_z);
+			out.writeInt(m_size_x);
+			out.writeInt(m_size_z);
+			out.writeInt(m_timestamps.size());
+			for (Map.Entry<ChunkCoord, Integer> me : m_timestamps.entrySet()) {
+				out.writeInt(me.getKey().x());
+				out.writeInt(me.getKey().z());
+				out.writeInt(me.getValue());
+			}
+		} finally {
+			out.close();
+		}
+		try {
+			MineSpy.replaceFile(file, tmp);
+		} catch (IOException e) {
+			tmp.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Work out which chunks have to be rendered again to bring an image made from an older manifest up to date with
+	 * this one. Shaders can look at neighbouring chunks, so the neighbours of every new or changed chunk are included.
+	 * 
+	 * @param prev
+	 *            The manifest of the existing image.
+	 * @return The chunks to render, or null if the existing image can't be reused (the settings or world bounds have
+	 *         changed, or chunks have been removed).
+	 */
+	public Set<ChunkCoord> changedSince(RenderManifest prev) {
+		if (!m_key.equals(prev.m_key)) return null;
+		if (m_min_x != prev.m_min_x || m_min_z != prev.m_min_z) return null;
+		if (m_size_x != prev.m_size_x || m_size_z != prev.m_size_z) return null;
+		for (ChunkCoord cc : prev.m_timestamps.keySet()) {
+			if (!m_timestamps.containsKey(cc)) return null;
+		}
+		Set<ChunkCoord> dirty = new HashSet<ChunkCoord>();
+		for (Map.Entry<ChunkCoord, Integer> me : m_timestamps.entrySet()) {
+			ChunkCoord cc = me.getKey();
+			if (me.getValue().equals(prev.m_timestamps.get(cc))) continue;
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dz = -1; dz <= 1; dz++) {
+					ChunkCoord ncc = new ChunkCoord(cc.x() + dx, cc.z() + dz);
+					if (m_timestamps.containsKey(ncc)) dirty.add(ncc);
+				}
+			}
+		}
+		return dirty;
+	}
+
+	public int totalChunks() {
+		return m_timestamps.size();
+	}
+
+}
@@ -1,5 +1,7 @@
 package minespy;
 
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.Collections;
 import java.util.HashSet;
@@ -19,6 +21,7 @@ public class Renderer {
 	private final BufferedImage m_img;
 	private final RenderThread[] m_threads;
 	private final IChunkCoordIterator m_itr;
+	private final int m_total;
 	private final AtomicInteger m_progcount = new AtomicInteger(0);
 
 	private final Set<IRenderListener> m_listeners = Collections.synchronizedSet(new HashSet<IRenderListener>());
@@ -30,12 +33,36 @@ public class Renderer {
 	private volatile double throttle = 1.0;
 
 	public Renderer(IWorld world_, IBlockColorProvider cp_, IMapShaderFactory shaderfac_, int skylight_) {
+		this(world_, cp_, shaderfac_, skylight_, null, null);
+	}
+
+	/**
+	 * Create a renderer that only renders some chunks, drawing over an existing image. The existing image must be the
+	 * size of the world; it is not modified.
+	 * 
+	 * @param base_
+	 *            Image to draw over, or null to start with a blank image.
+	 * @param ccs_
+	 *            Chunks to render, or null to render all.
+	 */
+	public Renderer(IWorld world_, IBlockColorProvider cp_, IMapShaderFactory shaderfac_, int skylight_,
+			BufferedImage base_, Set<ChunkCoord> ccs_) {
 		m_world = world_;
-		m_itr = m_world.iterator();
+		m_itr = ccs_ == null ? m_world.iterator() : m_world.iterator(ccs_);
+		m_total = ccs_ == null ? m_world.totalChunks() : ccs_.size();
 		m_cp = cp_;
 		m_shaderfac = shaderfac_;
 		m_skylight = skylight_;
 		m_img = new BufferedImage(m_world.sizeX(), m_world.sizeZ(), BufferedImage.TYPE_INT_ARGB);
+		if (base_ != null) {
+			if (base_.getWidth() != m_img.getWidth() || base_.getHeight() != m_img.getHeight()) {
+				throw new IllegalArgumentException("Base image is not the size of the world.");
+			}
+			Graphics2D g = m_img.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.drawImage(base_, 0, 0, null);
+			g.dispose();
+		}
 		m_threads = new RenderThread[Runtime.getRuntime().availableProcessors()];
 		MineSpy.logf("Renderer using %d thread(s).\n", m_threads.length);
 		for (int i = 0; i < m_threads.length; i++) {
@@ -51,7 +78,7 @@ public class Renderer {
 		if (rl == null) throw new NullPointerException();
 		if (m_listeners.add(rl)) {
 			rl.notifyRenderer(this);
-			rl.notifyProgress(m_progcount.get(), m_world.totalChunks());
+			rl.notifyProgress(m_progcount.get(), m_total);
 			return true;
 		}
 		return false;
@@ -76,7 +103,7 @@ public class Renderer {
 	}
 
 	public int totalChunks() {
-		return m_world.totalChunks();
+		return m_total;
 	}
 
 	public void waitUntilDone() throws AbnormalTerminationException {
@@ -141,7 +168,7 @@ public class Renderer {
 					if ((prog & 0x1FF) == 0) {
 						// every 512 chunks send progress notification
 						for (IRenderListener rpl : m_listeners) {
-							rpl.notifyProgress(prog, m_world.totalChunks());
+							rpl.notifyProgress(prog, m_total);
 						}
 					}
 
@@ -166,9 +193,10 @@ public class Renderer {
 				m_terminate = true;
 			}
 			if (m_terminate_count.incrementAndGet() == m_threads.length) {
-				// last thread to finish
+				// last thread to finish, whether the chunks ran out or not
+				m_itr.close();
 				for (IRenderListener rl : m_listeners) {
-					rl.notifyProgress(m_progcount.get(), m_world.totalChunks());
+					rl.notifyProgress(m_progcount.get(), m_total);
 					rl.notifyTermination(m_terminate_exception);
 				}
 			}
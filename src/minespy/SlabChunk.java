@@ -0,0 +1,120 @@
+package minespy;
+
+import java.nio.ByteBuffer;
+
+import minespy.colorproviders.IBlockColorProvider;
+import minespy.nbt.Tag;
+
+/**
+ * A chunk whose sections are slots of a <code>SlabChunkStore</code>, laid out as in <code>Chunk</code>. Only the
+ * biomes, height map and column summary are on the heap. The voxels can only be read while the chunk is pinned (see
+ * <code>SlabChunkStore.pin()</code>); once it has been recycled its slots belong to other chunks.
+ */
+public final class SlabChunk implements IChunk {
+
+	private final SlabChunkStore m_store;
+	// all the slots of this chunk, given back when it is recycled
+	private final int[] m_slots;
+	// per section (y / 16) buffer and slot position in it
+	private final ByteBuffer[] m_buffers;
+	private final int[] m_offsets;
+	private final byte[] m_biomes;
+	private final int[] m_heightmap;
+	private volatile ColumnSummary m_summary = null;
+	private volatile boolean m_recycled = false;
+
+	// guarded by the store
+	int m_pins = 0;
+
+	/**
+	 * Construct a chunk over slots that have already been filled, and summarise its columns.
+	 */
+	SlabChunk(SlabChunkStore store_, Tag level, int[] slots_, ByteBuffer[] buffers_, int[] offsets_,
+			IBlockColorProvider cp, int[] alphas) {
+		m_store = store_;
+		m_slots = slots_;
+		m_buffers = buffers_;
+		m_offsets = offsets_;
+		m_biomes = Chunk.readBiomes(level);
+		m_summary = new ColumnSummary(this, cp, alphas);
+		int[] heightmap = Chunk.readHeightMap(level);
+		if (heightmap == null) {
+			// not in the file, work it out
+			heightmap = m_summary.toHeightMap();
+		}
+		m_heightmap = heightmap;
+	}
+
+	/**
+	 * @see SlabChunkStore#pin(SlabChunk)
+	 */
+	public boolean pin() {
+		return m_store.pin(this);
+	}
+
+	/**
+	 * @see SlabChunkStore#unpin(SlabChunk)
+	 */
+	public void unpin() {
+		m_store.unpin(this);
+	}
+
+	public boolean isRecycled() {
+		return m_recycled;
+	}
+
+	/**
+	 * Called by the store, with its lock held, when it takes the slots back.
+	 * 
+	 * @return The slots.
+	 */
+	int[] recycle() {
+		m_recycled = true;
+		return m_slots;
+	}
+
+	public final ColumnSummary getColumnSummary() {
+		ColumnSummary s = m_summary;
+		if (s == null) {
+			// racing threads will just do the same thing
+			s = new ColumnSummary(this, null, null);
+			m_summary = s;
+		}
+		return s;
+	}
+
+	private int nibble(int section, int offset, int index) {
+		return (m_buffers[section].get(m_offsets[section] + offset + (index >> 1)) >> ((index & 1) << 2)) & 0x0F;
+	}
+
+	public final int getBiome(int local_x, int local_z) {
+		return m_biomes[local_z * 16 + local_x];
+	}
+
+	public final int getHeight(int local_x, int local_z) {
+		return m_heightmap[local_z * 16 + local_x];
+	}
+
+	public final int getBlock(int local_x, int local_z, int local_y) {
+		if (local_y < 0 || local_y > 255) return 0;
+		int section = local_y >> 4;
+		return m_buffers[section].getShort(m_offsets[section] + (((local_y & 15) << 8 | local_z << 4 | local_x) << 1));
+	}
+
+	public final int getData(int local_x, int local_z, int local_y) {
+		if (local_y < 0 || local_y > 255) return 0;
+		return nibble(local_y >> 4, SlabChunkStore.DATA_OFFSET, (local_y & 15) << 8 | local_z << 4 | local_x);
+	}
+
+	public final int getBlockLight(int local_x, int local_z, int local_y) {
+		if (local_y < 0 || local_y > 255) return 0;
+		return nibble(local_y >> 4, SlabChunkStore.BLOCKLIGHT_OFFSET, (local_y & 15) << 8 | local_z << 4 | local_x);
+	}
+
+	public final int getSkyLight(int local_x, int local_z, int local_y) {
+		if (local_y < 0) return 0;
+		if (local_y > 255) return 15;
+		return nibble(local_y >> 4, SlabChunkStore.SKYLIGHT_OFFSET, (local_y & 15) << 8 | local_z << 4 | local_x);
+	}
+
+}
@@ -0,0 +1,283 @@
+package minespy;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import minespy.colorproviders.IBlockColorProvider;
+import minespy.nbt.*;
+
+/**
+ * Keeps the voxel data of loaded chunks outside the Java heap, in fixed-size slots of direct buffers, one slot per
+ * section. Decoded chunks then stop being large heap objects that the garbage collector has to move around and
+ * reclaim; their slots are reused instead.
+ * <p>
+ * Chunks built here are <code>SlabChunk</code>s. A chunk is pinned while it is in use and idle otherwise. Idle chunks
+ * keep their slots, so that they can be used again without reloading them, until the slots are needed for another
+ * chunk: the least recently idle chunk is then recycled. A recycled chunk cannot be pinned again and has to be
+ * reloaded. The buffers are allocated as they are needed, up to a fixed capacity; when all of it is pinned,
+ * <code>build()</code> returns null and the caller has to keep the chunk on the heap instead.
+ */
+public final class SlabChunkStore {
+
+	// slot layout: blocks as native order shorts, then the three nibble arrays as in the chunk tag
+	static final int SECTION_VOLUME = 16 * 16 * 16;
+	static final int DATA_OFFSET = SECTION_VOLUME * 2;
+	static final int BLOCKLIGHT_OFFSET = DATA_OFFSET + SECTION_VOLUME / 2;
+	static final int SKYLIGHT_OFFSET = BLOCKLIGHT_OFFSET + SECTION_VOLUME / 2;
+	static final int SLOT_BYTES = SKYLIGHT_OFFSET + SECTION_VOLUME / 2;
+
+	// slots per buffer (56MB), well below the 2GB limit of a buffer
+	private static final int BUFFER_SLOTS = 4096;
+
+	// slot 0 is never written to; missing sections use it, like the shared empty arrays of Chunk
+	static final int EMPTY_SLOT = 0;
+
+	private static final String[] SECTION_ARRAYS = { "Blocks", "Add", "Data", "BlockLight", "SkyLight" };
+
+	private int m_capacity;
+	private final List<ByteBuffer> m_buffers = new ArrayList<ByteBuffer>();
+	private int m_allocated = 0;
+	private int[] m_free = new int[BUFFER_SLOTS];
+	private int m_free_count = 0;
+	private boolean m_full_logged = false;
+
+	// every chunk with slots is in exactly one of these; they also keep it from being garbage collected
+	private final Set<SlabChunk> m_pinned = new HashSet<SlabChunk>();
+	// in the order they became idle
+	private final LinkedHashSet<SlabChunk> m_idle = new LinkedHashSet<SlabChunk>();
+
+	/**
+	 * @param bytes
+	 *            The most memory to allocate for slots. At least one slot is always allocated, for empty sections.
+	 */
+	public SlabChunkStore(long bytes) {
+		if (bytes < 0) throw new IllegalArgumentException("Negative chunk store size.");
+		m_capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / SLOT_BYTES));
+		m_allocated = Math.min(BUFFER_SLOTS, m_capacity);
+		m_buffers.add(allocateBuffer(m_allocated));
+		for (int i = m_allocated - 1; i > EMPTY_SLOT; i--) {
+			m_free[m_free_count++] = i;
+		}
+	}
+
+	private static ByteBuffer allocateBuffer(int slots) {
+		// direct buffers start out zeroed
+		return ByteBuffer.allocateDirect(slots * SLOT_BYTES).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * @return The number of slots this store can hold.
+	 */
+	public synchronized int getCapacity() {
+		return m_capacity;
+	}
+
+	/**
+	 * @return The buffer containing a slot.
+	 */
+	synchronized ByteBuffer buffer(int slot) {
+		return m_buffers.get(slot / BUFFER_SLOTS);
+	}
+
+	/**
+	 * @return The position of a slot in its buffer.
+	 */
+	static int offset(int slot) {
+		return (slot % BUFFER_SLOTS) * SLOT_BYTES;
+	}
+
+	/**
+	 * Build and summarise a chunk from a chunk tag, then give the section arrays of the tag back to a pool. The tag
+	 * must not be used afterwards.
+	 * 
+	 * @param cp
+	 *            See <code>ColumnSummary</code>.
+	 * @param alphas
+	 *            See <code>ColumnSummary</code>.
+	 * @return The chunk, pinned once for the caller, or null if there are not enough free slots for it.
+	 */
+	public SlabChunk build(Tag root_, ArrayPool pool, IBlockColorProvider cp, int[] alphas) {
+		Tag level = root_.child("Level");
+		List<Tag> sections = new ArrayList<Tag>();
+		for (Tag t : level.child("Sections")) {
+			byte section_y = t.get("Y");
+			if (section_y >= 0 && section_y < 16) sections.add(t);
+		}
+		int[] slots = allocate(sections.size());
+		if (slots == null) return null;
+		SlabChunk c;
+		try {
+			c = fill(level, sections, slots, cp, alphas);
+		} catch (RuntimeException e) {
+			// e.g. a section without light; don't lose the slots
+			synchronized (this) {
+				release(slots);
+			}
+			throw e;
+		}
+
+		for (Tag t : sections) {
+			for (String name : SECTION_ARRAYS) {
+				try {
+					pool.recycle(t.<byte[]> get(name));
+				} catch (NoSuchElementException e) {
+					// nothing to do
+				}
+			}
+		}
+
+		// pinned from the start, so that it can't be recycled before the caller gets to use it
+		synchronized (this) {
+			c.m_pins = 1;
+			m_pinned.add(c);
+		}
+		return c;
+	}
+
+	/**
+	 * Copy the sections of a chunk into its slots and construct the chunk over them.
+	 */
+	private SlabChunk fill(Tag level, List<Tag> sections, int[] slots, IBlockColorProvider cp, int[] alphas) {
+		// nobody else knows about these slots until the chunk is pinned, so fill them without holding the lock
+		int[] section_slots = new int[16];
+		for (int i = 0; i < 16; i++) {
+			section_slots[i] = EMPTY_SLOT;
+		}
+		short[] blocks = new short[SECTION_VOLUME];
+		for (int k = 0; k < sections.size(); k++) {
+			Tag t = sections.get(k);
+			byte section_y = t.get("Y");
+			int slot = slots[k];
+			// a section that appears twice overwrites the first, as in Chunk
+			section_slots[section_y] = slot;
+			byte[] section_blocks = t.get("Blocks");
+			byte[] section_add = null;
+			try {
+				section_add = Chunk.nibbles(t.<byte[]> get("Add"));
+			} catch (NoSuchElementException e) {
+				// nothing to do
+			}
+			int n = Math.min(section_blocks.length, SECTION_VOLUME);
+			for (int i = 0; i < n; i++) {
+				int block = section_blocks[i] & 0xFF;
+				if (section_add != null) block |= Chunk.nibble(section_add, i) << 8;
+				blocks[i] = (short) block;
+			}
+			for (int i = n; i < SECTION_VOLUME; i++) {
+				blocks[i] = 0;
+			}
+			ByteBuffer buf = buffer(slot).duplicate().order(ByteOrder.nativeOrder());
+			int off = offset(slot);
+			buf.position(off);
+			buf.asShortBuffer().put(blocks);
+			buf.position(off + DATA_OFFSET);
+			buf.put(Chunk.nibbles(t.<byte[]> get("Data")));
+			buf.put(Chunk.nibbles(t.<byte[]> get("BlockLight")));
+			buf.put(Chunk.nibbles(t.<byte[]> get("SkyLight")));
+		}
+
+		ByteBuffer[] buffers = new ByteBuffer[16];
+		int[] offsets = new int[16];
+		for (int i = 0; i < 16; i++) {
+			buffers[i] = buffer(section_slots[i]);
+			offsets[i] = offset(section_slots[i]);
+		}
+		// summarised while it still can't be recycled
+		return new SlabChunk(this, level, slots, buffers, offsets, cp, alphas);
+	}
+
+	/**
+	 * Take free slots, growing the store or recycling idle chunks if there are not enough.
+	 * 
+	 * @return The slots, or null if there are not enough even then.
+	 */
+	private synchronized int[] allocate(int count) {
+		while (m_free_count < count) {
+			if (m_allocated < m_capacity) {
+				int slots = Math.min(BUFFER_SLOTS, m_capacity - m_allocated);
+				ByteBuffer buf;
+				try {
+					buf = allocateBuffer(slots);
+				} catch (OutOfMemoryError e) {
+					// out of direct memory (see -XX:MaxDirectMemorySize), make do with what we have
+					MineSpy.log("Unable to grow off-heap chunk store: " + e.getMessage());
+					m_capacity = m_allocated;
+					continue;
+				}
+				// buffers are always full size except the last
+				m_buffers.add(buf);
+				ensureFree(m_free_count + slots);
+				for (int i = m_allocated + slots - 1; i >= m_allocated; i--) {
+					m_free[m_free_count++] = i;
+				}
+				m_allocated += slots;
+			} else if (!m_idle.isEmpty()) {
+				Iterator<SlabChunk> it = m_idle.iterator();
+				SlabChunk c = it.next();
+				it.remove();
+				release(c.recycle());
+			} else {
+				if (!m_full_logged) {
+					m_full_logged = true;
+					MineSpy.log("Off-heap chunk store is full, keeping some chunks on the heap.");
+				}
+				return null;
+			}
+		}
+		int[] slots = new int[count];
+		for (int i = 0; i < count; i++) {
+			slots[i] = m_free[--m_free_count];
+		}
+		return slots;
+	}
+
+	private void release(int[] slots) {
+		ensureFree(m_free_count + slots.length);
+		for (int slot : slots) {
+			m_free[m_free_count++] = slot;
+		}
+	}
+
+	private void ensureFree(int length) {
+		if (m_free.length < length) {
+			int[] free = new int[Math.max(length, m_free.length * 2)];
+			System.arraycopy(m_free, 0, free, 0, m_free_count);
+			m_free = free;
+		}
+	}
+
+	/**
+	 * Stop a chunk from being recycled while it is in use. Every successful call must be matched by a call to
+	 * <code>unpin()</code>.
+	 * 
+	 * @return False if the chunk has already been recycled.
+	 */
+	synchronized boolean pin(SlabChunk c) {
+		if (c.isRecycled()) return false;
+		if (c.m_pins++ == 0) {
+			m_idle.remove(c);
+			m_pinned.add(c);
+		}
+		return true;
+	}
+
+	/**
+	 * Let a chunk be recycled once nothing is using it.
+	 */
+	synchronized void unpin(SlabChunk c) {
+		if (c.m_pins <= 0) throw new IllegalStateException("Chunk is not pinned.");
+		if (--c.m_pins == 0) {
+			m_pinned.remove(c);
+			// most recently idle goes last
+			m_idle.add(c);
+		}
+	}
+
+}
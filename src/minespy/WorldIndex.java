@@ -0,0 +1,226 @@
+package minespy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact index of the region files of a world, kept in a file next to them. For each region it records the file
+ * size and modification date, which chunks exist and the bounds of those chunks, so that regions which have not
+ * changed since the index was written can be opened without reading their headers.
+ */
+public class WorldIndex {
+
+	// "MSWI"
+	private static final int MAGIC = 0x4D535749;
+	private static final int VERSION = 1;
+
+	/**
+	 * Index entry for one region file.
+	 */
+	public static final class Entry {
+
+		private final long m_size;
+		private final long m_mtime;
+		private final long[] m_occupancy;
+		private final int m_min_x, m_min_z, m_max_x, m_max_z;
+
+		public Entry(long size_, long mtime_, long[] occupancy_, int min_x_, int min_z_, int max_x_, int max_z_) {
+			m_size = size_;
+			m_mtime = mtime_;
+			m_occupancy = occupancy_.clone();
+			m_min_x = min_x_;
+			m_min_z = min_z_;
+			m_max_x = max_x_;
+			m_max_z = max_z_;
+		}
+
+		public long size() {
+			return m_size;
+		}
+
+		public long lastModified() {
+			return m_mtime;
+		}
+
+		/**
+		 * @return The chunk occupancy bitmap, as returned by <code>RegionFile.getOccupancy()</code>.
+		 */
+		public long[] occupancy() {
+			return m_occupancy.clone();
+		}
+
+		public int minX() {
+			return m_min_x;
+		}
+
+		public int minZ() {
+			return m_min_z;
+		}
+
+		public int maxX() {
+			return m_max_x;
+		}
+
+		public int maxZ() {
+			return m_max_z;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (int) (m_size ^ (m_size >>> 32));
+			result = prime * result + (int) (m_mtime ^ (m_mtime >>> 32));
+			result = prime * result + Arrays.hashCode(m_occupancy);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (obj == null) return false;
+			if (getClass() != obj.getClass()) return false;
+			Entry other = (Entry) obj;
+			if (m_size != other.m_size) return false;
+			if (m_mtime != other.m_mtime) return false;
+			if (!Arrays.equals(m_occupancy, other.m_occupancy)) return false;
+			if (m_min_x != other.m_min_x || m_min_z != other.m_min_z) return false;
+			if (m_max_x != other.m_max_x || m_max_z != other.m_max_z) return false;
+			return true;
+		}
+
+	}
+
+	private final File m_file;
+	// what was in the file when we loaded it
+	private final Map<String, Entry> m_loaded = new HashMap<String, Entry>();
+	// what has been put since
+	private final Map<String, Entry> m_current = new HashMap<String, Entry>();
+
+	/**
+	 * Load an index. A missing or unreadable index file is treated as empty.
+	 * 
+	 * @param file_
+	 *            The index file.
+	 */
+	public WorldIndex(File file_) {
+		m_file = file_;
+		if (!m_file.exists()) return;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(m_file)));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					MineSpy.log("World index '" + m_file.getName() + "' is not valid, ignoring it.");
+					return;
+				}
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					String name = in.readUTF();
+					long size = in.readLong();
+					long mtime = in.readLong();
+					long[] occupancy = new long[16];
+					for (int j = 0; j < occupancy.length; j++) {
+						occupancy[j] = in.readLong();
+					}
+					int min_x = in.readInt();
+					int min_z = in.readInt();
+					int max_x = in.readInt();
+					int max_z = in.readInt();
+					m_loaded.put(name, new Entry(size, mtime, occupancy, min_x, min_z, max_x, max_z));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			MineSpy.log("Unable to read world index '" + m_file.getName() + "', ignoring it.");
+			m_loaded.clear();
+		}
+	}
+
+	/**
+	 * Get the entry for a region file, if it is still valid.
+	 * 
+	 * @param name
+	 *            The name of the region file.
+	 * @param size
+	 *            The current size of the region file.
+	 * @param mtime
+	 *            The current modification date of the region file.
+	 * @return The entry, or null if there is none or the size or modification date have changed.
+	 */
+	public synchronized Entry get(String name, long size, long mtime) {
+		Entry e = m_loaded.get(name);
+		if (e == null) return null;
+		if (e.size() != size || e.lastModified() != mtime) return null;
+		return e;
+	}
+
+	/**
+	 * Record the entry for a region file. Only regions put since loading will be written by <code>save()</code>.
+	 * 
+	 * @param name
+	 *            The name of the region file.
+	 * @param e
+	 *            The entry.
+	 */
+	public synchronized void put(String name, Entry e) {
+		if (name == null || e == null) throw new NullPointerException();
+		m_current.put(name, e);
+	}
+
+	/**
+	 * @return True if the entries put since loading differ from what was loaded.
+	 */
+	public synchronized boolean isDirty() {
+		return !m_current.equals(m_loaded);
+	}
+
+	/**
+	 * Write the entries put since loading to the index file, replacing it.
+	 * 
+	 * @throws IOException
+	 *             If the index file cannot be written.
+	 */
+	public synchronized void save() throws IOException {
+		File tmp = new File(m_file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(m_current.size());
+			for (Map.Entry<String, Entry> me : m_current.entrySet()) {
+				Entry e = me.getValue();
+				out.writeUTF(me.getKey());
+				out.writeLong(e.m_size);
+				out.writeLong(e.m_mtime);
+				for (long l : e.m_occupancy) {
+					out.writeLong(l);
+				}
+				out.writeInt(e.m_min_x);
+				out.writeInt(e.m_min_z);
+				out.writeInt(e.m_max_x);
+				out.writeInt(e.m_max_z);
+			}
+		} finally {
+			out.close();
+		}
+		try {
+			MineSpy.replaceFile(m_file, tmp);
+		} catch (IOException e) {
+			tmp.delete();
+			throw e;
+		}
+		m_loaded.clear();
+		m_loaded.putAll(m_current);
+	}
+
+}
@@ -1,5 +1,7 @@
 package minespy;
 
+import minespy.colorproviders.IBlockColorProvider;
+
 public class YRun {
 	
 	public static final YRun BLANK = new BlankYRun();
@@ -40,6 +42,21 @@ public class YRun {
 			return 15;
 		}
 		
+		@Override
+		public int getSurfaceHeight() {
+			return 0;
+		}
+		
+		@Override
+		public int getSolidHeight() {
+			return 0;
+		}
+		
+		@Override
+		public int getAlphaHeight(IBlockColorProvider cp, int alpha) {
+			return 0;
+		}
+		
 	}
 	
 	private final IChunk m_chunk;
@@ -75,4 +92,27 @@ public class YRun {
 		return m_chunk.getSkyLight(m_local_x, m_local_z, y);
 	}
 	
+	/**
+	 * @return One above the highest non-air block, or 0 if the column is all air.
+	 */
+	public int getSurfaceHeight() {
+		return m_chunk.getColumnSummary().getHeight(m_local_x, m_local_z);
+	}
+	
+	/**
+	 * @return One above the highest block that isn't transparent, or 0 if there is none.
+	 */
+	public int getSolidHeight() {
+		return m_chunk.getColumnSummary().getSolidHeight(m_local_x, m_local_z);
+	}
+	
+	/**
+	 * @return One above the highest block whose colour has at least the alpha value, 0 if there is none, or -1 if the
+	 *         chunk's column summary doesn't have that alpha value for the colour provider (so the caller has to
+	 *         find it).
+	 */
+	public int getAlphaHeight(IBlockColorProvider cp, int alpha) {
+		return m_chunk.getColumnSummary().getAlphaHeight(cp, alpha, m_local_x, m_local_z);
+	}
+	
 }
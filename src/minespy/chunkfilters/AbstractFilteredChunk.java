@@ -1,15 +1,24 @@
 package minespy.chunkfilters;
 
+import minespy.ColumnSummary;
 import minespy.IChunk;
 
 public abstract class AbstractFilteredChunk implements IChunk {
 
 	private final IChunk m_c;
+	private volatile ColumnSummary m_summary = null;
 	
 	public AbstractFilteredChunk(IChunk c_) {
 		m_c = c_;
 	}
 	
+	/**
+	 * @return The chunk being filtered.
+	 */
+	protected IChunk getSource() {
+		return m_c;
+	}
+	
 	@Override
 	public int getBiome(int local_x, int local_z) {
 		return m_c.getBiome(local_x, local_z);
@@ -40,4 +49,19 @@ public abstract class AbstractFilteredChunk implements IChunk {
 		return m_c.getSkyLight(local_x, local_z, local_y);
 	}
 
+	/**
+	 * Summarises the filtered chunk on first use, with the same alpha values as the source chunk. Filters that don't
+	 * change blocks can return the source chunk's summary instead.
+	 */
+	@Override
+	public ColumnSummary getColumnSummary() {
+		ColumnSummary s = m_summary;
+		if (s == null) {
+			ColumnSummary src = m_c.getColumnSummary();
+			s = new ColumnSummary(this, src.getColorProvider(), src.getAlphas());
+			m_summary = s;
+		}
+		return s;
+	}
+
 }
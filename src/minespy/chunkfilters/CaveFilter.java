@@ -1,5 +1,6 @@
 package minespy.chunkfilters;
 
+import minespy.ColumnSummary;
 import minespy.Config;
 import minespy.IChunk;
 
@@ -12,18 +13,14 @@ public class CaveFilter implements IChunkFilter {
 
 		public Chunk(IChunk c_) {
 			super(c_);
+			ColumnSummary summary = c_.getColumnSummary();
 			for (int z = 0; z < 16; z++) {
 				for (int x = 0; x < 16; x++) {
-					int y = 255;
-					while (Config.getConfig().isBlockTransparent(c_.getBlock(x, z, y))) {
-						// first opaque
-						y--;
-						if (y < 0) continue;
-					}
-					while (!Config.getConfig().isBlockTransparent(c_.getBlock(x, z, y - 1))) {
+					// first opaque
+					int y = summary.getSolidHeight(x, z) - 1;
+					while (y >= 1 && !Config.getConfig().isBlockTransparent(c_.getBlock(x, z, y - 1))) {
 						// next transparent
 						y--;
-						if (y < 1) continue;
 					}
 					cave_hmap[z * 16 + x] = y;
 				}
@@ -1,5 +1,6 @@
 package minespy.chunkfilters;
 
+import minespy.ColumnSummary;
 import minespy.IChunk;
 
 public class ForceBrightnessFilter implements IChunkFilter {
@@ -20,6 +21,12 @@ public class ForceBrightnessFilter implements IChunkFilter {
 			return 15;
 		}
 
+		@Override
+		public ColumnSummary getColumnSummary() {
+			// only the light changes
+			return getSource().getColumnSummary();
+		}
+
 	}
 
 	@Override
@@ -376,7 +376,8 @@ public class MainFrame extends JFrame {
 					progbar_render.setValue(prog);
 					Renderer r = rl.getRenderer();
 					imgframe.setImage(r == null ? null : r.getImage());
-					imgframe.setTitle(String.format("%d / %d chunks rendered [%d%%]", prog, total, prog * 100 / total));
+					imgframe.setTitle(String.format("%d / %d chunks rendered [%d%%]", prog, total, total == 0 ? 100
+							: prog * 100 / total));
 					imgframe.repaint();
 					if (rl.isDone()) {
 						timer_render.stop();
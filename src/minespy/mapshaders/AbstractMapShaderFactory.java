@@ -47,6 +47,11 @@ public abstract class AbstractMapShaderFactory implements IMapShaderFactory {
 		return (T) m_props.get(name);
 	}
 
+	@Override
+	public int[] getAlphaThresholds() {
+		return new int[0];
+	}
+
 	@Override
 	public String[] listProperties() {
 		return (String[]) m_props.keySet().toArray();
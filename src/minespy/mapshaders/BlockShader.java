@@ -33,7 +33,8 @@ public class BlockShader implements IMapShader {
 	public int shade(IWorld w, int x, int z, IBlockColorProvider cp, int skylight) {
 		float f_skylight = skylight / 15f;
 		YRun yrun = w.getYRun(x, z);
-		for (int y = 256; y-- > 0;) {
+		// nothing but air above the surface
+		for (int y = yrun.getSurfaceHeight(); y-- > 0;) {
 			int block = yrun.getBlock(y);
 			if (block != 0) {
 				int rgb = cp.getRGB(block, yrun.getData(y), yrun.getBiome());
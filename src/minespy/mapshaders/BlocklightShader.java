@@ -34,12 +34,9 @@ public class BlocklightShader implements IMapShader {
 	@Override
 	public int shade(IWorld w, int x, int z, IBlockColorProvider block_color_provider, int skylight) {
 		YRun yrun = w.getYRun(x, z);
-		int y = 255;
-		while (Config.getConfig().isBlockTransparent(yrun.getBlock(y - 1))) {
-			// first opaque
-			y--;
-			if (y < 1) return 0;
-		}
+		// above the first opaque
+		int y = yrun.getSolidHeight();
+		if (y < 1) return 0;
 		return 0xFF000000 | Color.getHSBColor((1f - yrun.getBlockLight(y) / 15f) * 0.7f, 1f, 1f).getRGB();
 	}
 
@@ -31,10 +31,7 @@ public class HeightColorShader implements IMapShader {
 	}
 
 	protected static int height(YRun yrun) {
-		for (int y = 256; y-- > 0;) {
-			if (yrun.getBlock(y) != 0) return y + 1;
-		}
-		return 0;
+		return yrun.getSurfaceHeight();
 	}
 	
 	@Override
@@ -16,4 +16,10 @@ public interface IMapShaderFactory {
 	
 	public String getFileName();
 	
+	/**
+	 * @return The alpha values the shaders look for the highest block of at least, so that chunks can summarise them
+	 *         when they are loaded (see <code>ColumnSummary</code>).
+	 */
+	public int[] getAlphaThresholds();
+	
 }
\ No newline at end of file
@@ -15,6 +15,12 @@ public class PrettyShader implements IMapShader {
 			createProperty("SurfaceNormalTopAlphaCutoff", Integer.class, 64);
 		}
 
+		@Override
+		public int[] getAlphaThresholds() {
+			return new int[] { this.<Integer> getProperty("SurfaceNormalBaseAlphaCutoff"),
+					this.<Integer> getProperty("SurfaceNormalTopAlphaCutoff") };
+		}
+
 		@Override
 		public IMapShader createInstance() {
 			return new PrettyShader(this.<Float> getProperty("SurfaceNormalBaseLightingModifier"),
@@ -50,10 +56,7 @@ public class PrettyShader implements IMapShader {
 	}
 
 	protected static int height(YRun yrun) {
-		for (int y = 256; y-- > 0;) {
-			if (yrun.getBlock(y) != 0) return y + 1;
-		}
-		return 0;
+		return yrun.getSurfaceHeight();
 	}
 
 	protected static int heightOpaque(YRun yrun, IBlockColorProvider cp) {
@@ -66,6 +69,8 @@ public class PrettyShader implements IMapShader {
 
 	protected static int heightOpaque(YRun yrun, IBlockColorProvider cp, int alpha) {
 		// the height of the highest block of at least that alpha value
+		int h = yrun.getAlphaHeight(cp, alpha);
+		if (h >= 0) return h;
 		int biome = yrun.getBiome();
 		for (int y = 256; y-- > 0;) {
 			if ((cp.getRGB(yrun.getBlock(y), yrun.getData(y), biome) >>> 24) >= alpha) return y + 1;
@@ -0,0 +1,82 @@
+package minespy.nbt;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Array allocator that hands out arrays given back to it with <code>recycle()</code> before allocating new ones. Arrays
+ * are pooled by exact length, and only a limited number of each length are kept. Not thread-safe; use
+ * <code>get()</code> to obtain the pool belonging to the current thread.
+ */
+public final class ArrayPool implements IArrayAllocator {
+
+	private static final ThreadLocal<ArrayPool> m_local = new ThreadLocal<ArrayPool>() {
+
+		@Override
+		protected ArrayPool initialValue() {
+			return new ArrayPool(128);
+		}
+
+	};
+
+	/**
+	 * @return The pool for the current thread.
+	 */
+	public static ArrayPool get() {
+		return m_local.get();
+	}
+
+	private final int m_max;
+	private final Map<Integer, ArrayDeque<byte[]>> m_bytes = new HashMap<Integer, ArrayDeque<byte[]>>();
+	private final Map<Integer, ArrayDeque<int[]>> m_ints = new HashMap<Integer, ArrayDeque<int[]>>();
+
+	/**
+	 * @param max_
+	 *            The most arrays of each type and length to keep.
+	 */
+	public ArrayPool(int max_) {
+		m_max = max_;
+	}
+
+	@Override
+	public byte[] allocateBytes(int length) {
+		ArrayDeque<byte[]> free = m_bytes.get(length);
+		byte[] a = free == null ? null : free.poll();
+		return a == null ? new byte[length] : a;
+	}
+
+	@Override
+	public int[] allocateInts(int length) {
+		ArrayDeque<int[]> free = m_ints.get(length);
+		int[] a = free == null ? null : free.poll();
+		return a == null ? new int[length] : a;
+	}
+
+	/**
+	 * Give an array back to the pool. It must not be used by the caller afterwards.
+	 */
+	public void recycle(byte[] a) {
+		if (a == null) return;
+		ArrayDeque<byte[]> free = m_bytes.get(a.length);
+		if (free == null) {
+			free = new ArrayDeque<byte[]>();
+			m_bytes.put(a.length, free);
+		}
+		if (free.size() < m_max) free.push(a);
+	}
+
+	/**
+	 * Give an array back to the pool. It must not be used by the caller afterwards.
+	 */
+	public void recycle(int[] a) {
+		if (a == null) return;
+		ArrayDeque<int[]> free = m_ints.get(a.length);
+		if (free == null) {
+			free = new ArrayDeque<int[]>();
+			m_ints.put(a.length, free);
+		}
+		if (free.size() < m_max) free.push(a);
+	}
+
+}
@@ -0,0 +1,200 @@
+package minespy.nbt;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+
+/**
+ * DataOutput that writes big-endian data to a growable byte array. Unlike a DataOutputStream over a
+ * ByteArrayOutputStream, nothing is synchronized and there is no per-byte stream call, which makes serialising tags
+ * to memory much faster. Reusable with <code>reset()</code>. Not thread-safe.
+ */
+public class ByteArrayDataOutput implements DataOutput {
+
+	private byte[] m_buf;
+	private int m_size = 0;
+
+	public ByteArrayDataOutput() {
+		this(8192);
+	}
+
+	public ByteArrayDataOutput(int capacity) {
+		m_buf = new byte[Math.max(16, capacity)];
+	}
+
+	/**
+	 * @return The array holding the data written so far, which is the first <code>size()</code> bytes. Only valid
+	 *         until the next write.
+	 */
+	public byte[] buffer() {
+		return m_buf;
+	}
+
+	public int size() {
+		return m_size;
+	}
+
+	/**
+	 * Discard the data written so far, keeping the array.
+	 */
+	public void reset() {
+		m_size = 0;
+	}
+
+	/**
+	 * Make room for <code>n</code> more bytes.
+	 */
+	private void ensure(int n) {
+		if (m_size + n > m_buf.length) {
+			m_buf = Arrays.copyOf(m_buf, Math.max(m_size + n, m_buf.length * 2));
+		}
+	}
+
+	@Override
+	public void write(int b) {
+		ensure(1);
+		m_buf[m_size++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b) {
+		write(b, 0, b.length);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensure(len);
+		System.arraycopy(b, off, m_buf, m_size, len);
+		m_size += len;
+	}
+
+	/**
+	 * Write <code>len</code> big-endian ints.
+	 */
+	public void write(int[] b, int off, int len) {
+		ensure(len * 4);
+		for (int i = off; i < off + len; i++) {
+			int v = b[i];
+			m_buf[m_size] = (byte) (v >>> 24);
+			m_buf[m_size + 1] = (byte) (v >>> 16);
+			m_buf[m_size + 2] = (byte) (v >>> 8);
+			m_buf[m_size + 3] = (byte) v;
+			m_size += 4;
+		}
+	}
+
+	@Override
+	public void writeBoolean(boolean v) {
+		write(v ? 1 : 0);
+	}
+
+	@Override
+	public void writeByte(int v) {
+		write(v);
+	}
+
+	@Override
+	public void writeShort(int v) {
+		ensure(2);
+		m_buf[m_size] = (byte) (v >>> 8);
+		m_buf[m_size + 1] = (byte) v;
+		m_size += 2;
+	}
+
+	@Override
+	public void writeChar(int v) {
+		writeShort(v);
+	}
+
+	@Override
+	public void writeInt(int v) {
+		ensure(4);
+		m_buf[m_size] = (byte) (v >>> 24);
+		m_buf[m_size + 1] = (byte) (v >>> 16);
+		m_buf[m_size + 2] = (byte) (v >>> 8);
+		m_buf[m_size + 3] = (byte) v;
+		m_size += 4;
+	}
+
+	@Override
+	public void writeLong(long v) {
+		writeInt((int) (v >>> 32));
+		writeInt((int) v);
+	}
+
+	@Override
+	public void writeFloat(float v) {
+		writeInt(Float.floatToIntBits(v));
+	}
+
+	@Override
+	public void writeDouble(double v) {
+		writeLong(Double.doubleToLongBits(v));
+	}
+
+	@Override
+	public void writeBytes(String s) {
+		int len = s.length();
+		ensure(len);
+		for (int i = 0; i < len; i++) {
+			m_buf[m_size++] = (byte) s.charAt(i);
+		}
+	}
+
+	@Override
+	public void writeChars(String s) {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			writeChar(s.charAt(i));
+		}
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		int len = s.length();
+		// ascii fast path
+		int start = m_size;
+		ensure(2 + len);
+		m_size += 2;
+		int i = 0;
+		for (; i < len; i++) {
+			char c = s.charAt(i);
+			if (c == 0 || c >= 0x80) break;
+			m_buf[m_size++] = (byte) c;
+		}
+		if (i < len) {
+			// no such luck, work out the full length and start again
+			m_size = start;
+			int utflen = 0;
+			for (int j = 0; j < len; j++) {
+				char c = s.charAt(j);
+				utflen += (c != 0 && c < 0x80) ? 1 : (c < 0x800 ? 2 : 3);
+			}
+			if (utflen > 65535) throw new UTFDataFormatException("Encoded string too long: " + utflen + " bytes");
+			ensure(2 + utflen);
+			writeShort(utflen);
+			for (int j = 0; j < len; j++) {
+				char c = s.charAt(j);
+				if (c != 0 && c < 0x80) {
+					m_buf[m_size++] = (byte) c;
+				} else if (c < 0x800) {
+					m_buf[m_size++] = (byte) (0xC0 | (c >> 6));
+					m_buf[m_size++] = (byte) (0x80 | (c & 0x3F));
+				} else {
+					m_buf[m_size++] = (byte) (0xE0 | (c >> 12));
+					m_buf[m_size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					m_buf[m_size++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			return;
+		}
+		if (len > 65535) {
+			m_size = start;
+			throw new UTFDataFormatException("Encoded string too long: " + len + " bytes");
+		}
+		m_buf[start] = (byte) (len >>> 8);
+		m_buf[start + 1] = (byte) len;
+	}
+
+}
@@ -0,0 +1,36 @@
+package minespy.nbt;
+
+/**
+ * Supplies the arrays for TAG_Byte_Array and TAG_Int_Array payloads when parsing. See
+ * <code>Tag.setArrayAllocator()</code>.
+ */
+public interface IArrayAllocator {
+
+	/**
+	 * Allocator that always allocates new arrays.
+	 */
+	public static final IArrayAllocator HEAP = new IArrayAllocator() {
+
+		@Override
+		public byte[] allocateBytes(int length) {
+			return new byte[length];
+		}
+
+		@Override
+		public int[] allocateInts(int length) {
+			return new int[length];
+		}
+
+	};
+
+	/**
+	 * @return An array of exactly <code>length</code> bytes. The contents do not matter; they will be overwritten.
+	 */
+	public byte[] allocateBytes(int length);
+
+	/**
+	 * @return An array of exactly <code>length</code> ints. The contents do not matter; they will be overwritten.
+	 */
+	public int[] allocateInts(int length);
+
+}
@@ -0,0 +1,68 @@
+package minespy.nbt;
+
+/**
+ * Callbacks for reading NBT data as a stream of events with <code>TagReader</code>, without building tags. Tags inside
+ * lists have empty names. The methods that return a boolean let the visitor skip over things it is not interested in,
+ * which is much cheaper than reading them.
+ */
+public interface ITagVisitor {
+
+	/**
+	 * Start of a TAG_Compound.
+	 * 
+	 * @return True to visit the contents (followed by <code>endCompound()</code>), false to skip the whole compound.
+	 */
+	public boolean visitCompound(String name);
+
+	/**
+	 * End of a TAG_Compound whose contents were visited.
+	 */
+	public void endCompound(String name);
+
+	/**
+	 * Start of a TAG_List.
+	 * 
+	 * @param tagid
+	 *            The tag id of the elements.
+	 * @param length
+	 *            The number of elements.
+	 * @return True to visit the elements (followed by <code>endList()</code>), false to skip the whole list.
+	 */
+	public boolean visitList(String name, byte tagid, int length);
+
+	/**
+	 * End of a TAG_List whose elements were visited.
+	 */
+	public void endList(String name);
+
+	public void visitByte(String name, byte value);
+
+	public void visitShort(String name, short value);
+
+	public void visitInt(String name, int value);
+
+	public void visitLong(String name, long value);
+
+	public void visitFloat(String name, float value);
+
+	public void visitDouble(String name, double value);
+
+	public void visitString(String name, String value);
+
+	/**
+	 * Start of a TAG_Byte_Array or TAG_Int_Array.
+	 * 
+	 * @param tagid
+	 *            The tag id of the array.
+	 * @param length
+	 *            The number of elements.
+	 * @return True to read the array (passed to <code>visitByteArray()</code> or <code>visitIntArray()</code>), false
+	 *         to skip it.
+	 */
+	public boolean visitArray(String name, byte tagid, int length);
+
+	public void visitByteArray(String name, byte[] value);
+
+	public void visitIntArray(String name, int[] value);
+
+}
@@ -0,0 +1,84 @@
+package minespy.nbt;
+
+import java.io.UTFDataFormatException;
+
+/**
+ * Decoder for the modified UTF-8 used by <code>DataInput.readUTF()</code> (and so by NBT). Nearly all NBT names and
+ * strings are plain ASCII, which is decoded with a simple copy loop; anything else falls back to full decoding.
+ */
+final class ModifiedUTF8 {
+
+	private ModifiedUTF8() {
+
+	}
+
+	/**
+	 * Decode a string (without its length prefix).
+	 * 
+	 * @throws UTFDataFormatException
+	 *             If the bytes are not valid modified UTF-8.
+	 */
+	static String decode(byte[] b, int off, int len) throws UTFDataFormatException {
+		char[] c = new char[len];
+		int i = 0;
+		// ascii fast path
+		for (; i < len; i++) {
+			int x = b[off + i];
+			if (x < 0) break;
+			c[i] = (char) x;
+		}
+		if (i == len) return new String(c);
+		return decodeSlow(b, off, len, c, i);
+	}
+
+	/**
+	 * Full decoding, continuing from byte (and char) <code>i</code>.
+	 */
+	private static String decodeSlow(byte[] b, int off, int len, char[] c, int i) throws UTFDataFormatException {
+		int n = i;
+		while (i < len) {
+			int x = b[off + i] & 0xFF;
+			switch (x >> 4) {
+			case 0:
+			case 1:
+			case 2:
+			case 3:
+			case 4:
+			case 5:
+			case 6:
+			case 7:
+				// 0xxxxxxx
+				c[n++] = (char) x;
+				i++;
+				break;
+			case 12:
+			case 13: {
+				// 110xxxxx 10xxxxxx
+				if (i + 2 > len) throw new UTFDataFormatException("Partial character at end of input.");
+				int y = b[off + i + 1];
+				if ((y & 0xC0) != 0x80) throw new UTFDataFormatException("Malformed input around byte " + i);
+				c[n++] = (char) (((x & 0x1F) << 6) | (y & 0x3F));
+				i += 2;
+				break;
+			}
+			case 14: {
+				// 1110xxxx 10xxxxxx 10xxxxxx
+				if (i + 3 > len) throw new UTFDataFormatException("Partial character at end of input.");
+				int y = b[off + i + 1];
+				int z = b[off + i + 2];
+				if ((y & 0xC0) != 0x80 || (z & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("Malformed input around byte " + (i + 1));
+				}
+				c[n++] = (char) (((x & 0x0F) << 12) | ((y & 0x3F) << 6) | (z & 0x3F));
+				i += 3;
+				break;
+			}
+			default:
+				// 10xxxxxx, 1111xxxx
+				throw new UTFDataFormatException("Malformed input around byte " + i);
+			}
+		}
+		return new String(c, 0, n);
+	}
+
+}
@@ -0,0 +1,61 @@
+package minespy.nbt;
+
+import java.io.IOException;
+
+/**
+ * Interning cache for tag names. NBT documents (chunks in particular) use a small set of names over and over, so
+ * looking the encoded bytes of a name up here returns the same String every time instead of decoding a new one. The
+ * cache is a fixed size table shared by all threads; entries are immutable, so races only cost a cache miss.
+ */
+final class NameCache {
+
+	private static final int SIZE = 512;
+	// longer names are rare and not worth caching
+	private static final int MAX_LENGTH = 64;
+
+	private static final class Entry {
+
+		final byte[] bytes;
+		final String name;
+
+		Entry(byte[] bytes_, String name_) {
+			bytes = bytes_;
+			name = name_;
+		}
+
+	}
+
+	private static final Entry[] entries = new Entry[SIZE];
+
+	private NameCache() {
+
+	}
+
+	/**
+	 * Get the name encoded (in modified UTF-8, without the length prefix) by a range of bytes.
+	 */
+	static String get(byte[] b, int off, int len) throws IOException {
+		if (len > MAX_LENGTH) return ModifiedUTF8.decode(b, off, len);
+		int h = len;
+		for (int i = off; i < off + len; i++) {
+			h = 31 * h + b[i];
+		}
+		int slot = (h ^ (h >>> 16)) & (SIZE - 1);
+		Entry e = entries[slot];
+		if (e != null && matches(e.bytes, b, off, len)) return e.name;
+		byte[] bytes = new byte[len];
+		System.arraycopy(b, off, bytes, 0, len);
+		String name = ModifiedUTF8.decode(bytes, 0, len);
+		entries[slot] = new Entry(bytes, name);
+		return name;
+	}
+
+	private static boolean matches(byte[] a, byte[] b, int off, int len) {
+		if (a.length != len) return false;
+		for (int i = 0; i < len; i++) {
+			if (a[i] != b[off + i]) return false;
+		}
+		return true;
+	}
+
+}
@@ -3,6 +3,7 @@ package minespy.nbt;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -26,6 +27,14 @@ public abstract class Tag implements Cloneable, Iterable<Tag> {
 	private static final Tag.Parser[] tag_parsers = new Tag.Parser[128];
 	private static final Map<Class<?>, Tag.Wrapper> tag_class_wrappers = new HashMap<Class<?>, Tag.Wrapper>();
 	private static final Tag.Wrapper[] tag_id_wrappers = new Tag.Wrapper[128];
+	private static final ThreadLocal<IArrayAllocator> array_allocator = new ThreadLocal<IArrayAllocator>() {
+
+		@Override
+		protected IArrayAllocator initialValue() {
+			return IArrayAllocator.HEAP;
+		}
+
+	};
 
 	static {
 		/*
@@ -199,6 +208,27 @@ public abstract class Tag implements Cloneable, Iterable<Tag> {
 		return tag_class_wrappers.get(t.getClass()).wrap(tagname, t);
 	}
 
+	/**
+	 * Set the allocator that parsers use for array payloads on the current thread. This lets code that parses many
+	 * tags and throws their arrays away (like chunk loading) reuse those arrays.
+	 * 
+	 * @param alloc
+	 *            The allocator, or null for the default (which always allocates new arrays).
+	 * @return The previous allocator, for restoring it afterwards.
+	 */
+	public static IArrayAllocator setArrayAllocator(IArrayAllocator alloc) {
+		IArrayAllocator prev = array_allocator.get();
+		array_allocator.set(alloc == null ? IArrayAllocator.HEAP : alloc);
+		return prev;
+	}
+
+	/**
+	 * @return The allocator that parsers use for array payloads on the current thread.
+	 */
+	public static IArrayAllocator getArrayAllocator() {
+		return array_allocator.get();
+	}
+
 	/**
 	 * Parse and return a tag in its entirety, using the first byte (tag id) to determine which parser to call.
 	 * 
@@ -222,6 +252,130 @@ public abstract class Tag implements Cloneable, Iterable<Tag> {
 		}
 	}
 
+	/**
+	 * Parse and return a tag in its entirety from a buffer, starting at its position. This is faster than parsing from
+	 * a stream. On success, the position of the buffer is moved to the end of the tag.
+	 * 
+	 * @param buf
+	 *            Buffer to read from.
+	 * @return The tag, or null if an end tag (tag id 0).
+	 * @throws IOException
+	 *             If the end of the buffer is reached or invalid data is encountered.
+	 * @throws IllegalStateException
+	 *             If a valid tag id is encountered for which there is no parser.
+	 */
+	public static Tag parse(ByteBuffer buf) throws IOException {
+		ByteBufferInput in = new ByteBufferInput(buf);
+		Tag t = parse(in);
+		buf.position(in.position());
+		return t;
+	}
+
+	/**
+	 * Parse and return a tag, keeping only the parts of it selected by a projection. Everything else is skipped over
+	 * without being built, which is much faster when only a small part of a large tag is wanted.
+	 * 
+	 * @param in
+	 *            Stream to read from.
+	 * @param proj
+	 *            The projection. Its paths are relative to the tag being parsed.
+	 * @return The tag, or null if an end tag (tag id 0).
+	 * @throws IOException
+	 *             If the stream cannot be read or invalid data is encountered.
+	 * @throws IllegalStateException
+	 *             If a valid tag id is encountered for which there is no parser.
+	 */
+	public static Tag parse(DataInput in, TagProjection proj) throws IOException {
+		if (proj == null) throw new NullPointerException();
+		byte tagid = in.readByte();
+		if (tagid == 0) return null;
+		try {
+			Parser p = getTagParser(tagid);
+			if (p == null) throw new IllegalStateException("No parser for tag id " + tagid);
+			return p.parse(in, proj);
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Parse and return a tag from a buffer, keeping only the parts of it selected by a projection. On success, the
+	 * position of the buffer is moved to the end of the tag.
+	 * 
+	 * @see #parse(DataInput, TagProjection)
+	 */
+	public static Tag parse(ByteBuffer buf, TagProjection proj) throws IOException {
+		ByteBufferInput in = new ByteBufferInput(buf);
+		Tag t = parse(in, proj);
+		buf.position(in.position());
+		return t;
+	}
+
+	/**
+	 * Parse a tag from a buffer lazily. If the tag is a TAG_Compound, only the names and positions of its children are
+	 * read, and each child is parsed the first time it is accessed (child compounds are lazy in the same way). This
+	 * makes reading a few values from a large document nearly as fast as reading the document. The contents of the
+	 * buffer must not be changed while the tag is in use. On success, the position of the buffer is moved to the end
+	 * of the tag.
+	 * 
+	 * @param buf
+	 *            Buffer to read from.
+	 * @return The tag, or null if an end tag (tag id 0).
+	 * @throws IOException
+	 *             If the end of the buffer is reached or invalid data is encountered.
+	 * @throws IllegalStateException
+	 *             If a valid tag id is encountered for which there is no parser, or (later) if parsing a child fails.
+	 */
+	public static Tag parseLazy(ByteBuffer buf) throws IOException {
+		ByteBufferInput in = new ByteBufferInput(buf);
+		byte tagid = in.readByte();
+		if (tagid == 0) {
+			buf.position(in.position());
+			return null;
+		}
+		Tag t;
+		try {
+			Parser p = getTagParser(tagid);
+			if (p == null) throw new IllegalStateException("No parser for tag id " + tagid);
+			String name = p.tagsHaveNames() ? in.readName() : "";
+			if (tagid == TagCompound.TAG_ID) {
+				t = new TagCompound(name, buf.duplicate(), in);
+			} else {
+				t = p.parsePayload(name, in);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e);
+		}
+		buf.position(in.position());
+		return t;
+	}
+
+	/**
+	 * Read a tag name. Names are interned.
+	 */
+	static String readName(DataInput in) throws IOException {
+		if (in instanceof ByteBufferInput) return ((ByteBufferInput) in).readName();
+		int len = in.readUnsignedShort();
+		byte[] b = new byte[len];
+		in.readFully(b);
+		return NameCache.get(b, 0, len);
+	}
+
+	/**
+	 * Skip exactly <code>n</code> bytes of a stream.
+	 */
+	static void skipFully(DataInput in, long n) throws IOException {
+		while (n > 0) {
+			int k = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+			if (k <= 0) {
+				// skipBytes may give up early on streams; make sure we're not at the end
+				in.readByte();
+				k = 1;
+			}
+			n -= k;
+		}
+	}
+
 	/**
 	 * Base class for tag id specific tag parsers.
 	 */
@@ -252,10 +406,43 @@ public abstract class Tag implements Cloneable, Iterable<Tag> {
 
 		public Tag parse(DataInput in) throws IOException {
 			// tagid byte already parsed
-			String name = tagsHaveNames() ? in.readUTF() : "";
+			String name = tagsHaveNames() ? readName(in) : "";
+			return parsePayload(name, in);
+		}
+
+		public Tag parse(DataInput in, TagProjection proj) throws IOException {
+			// tagid byte already parsed
+			String name = tagsHaveNames() ? readName(in) : "";
+			return parsePayload(name, in, proj);
+		}
+
+		/**
+		 * Parse the payload of a tag, keeping only the parts selected by a projection. The default implementation
+		 * ignores the projection, which is right for tags without children.
+		 */
+		protected Tag parsePayload(String name, DataInput in, TagProjection proj) throws IOException {
 			return parsePayload(name, in);
 		}
 
+		/**
+		 * Skip over the payload of a tag. The default implementation skips <code>payloadSize()</code> bytes if that is
+		 * known, otherwise it parses the payload and throws it away.
+		 */
+		protected void skipPayload(DataInput in) throws IOException {
+			if (payloadSize() >= 0) {
+				skipFully(in, payloadSize());
+			} else {
+				parsePayload("", in);
+			}
+		}
+
+		/**
+		 * @return The size in bytes of the payload of every tag of this type, or -1 if it varies.
+		 */
+		public int payloadSize() {
+			return -1;
+		}
+
 		/**
 		 * @return A Class object representing the payload type of tags generated by this parser, or null if such tags
 		 *         do not have a directly accessible payload.
@@ -21,6 +21,11 @@ public class TagByte extends Tag {
 			return new TagByte(name, val);
 		}
 
+		@Override
+		public int payloadSize() {
+			return 1;
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return Byte.class;
@@ -22,7 +22,7 @@ public class TagByteArray extends Tag {
 			if (length < 1) throw new IOException("TAG_Byte_Array (" + name + "): negative length.");
 			byte[] data = null;
 			try {
-				data = new byte[length];
+				data = Tag.getArrayAllocator().allocateBytes(length);
 			} catch (OutOfMemoryError e) {
 				throw new IOException("TAG_Byte_Array (" + name + "): unable to allocate space for " + length);
 			}
@@ -30,6 +30,13 @@ public class TagByteArray extends Tag {
 			return new TagByteArray(name, data);
 		}
 
+		@Override
+		protected void skipPayload(DataInput in) throws IOException {
+			int length = in.readInt();
+			if (length < 0) throw new IOException("TAG_Byte_Array: negative length.");
+			Tag.skipFully(in, length);
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return byte[].class;
@@ -3,6 +3,7 @@ package minespy.nbt;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -29,6 +30,36 @@ public class TagCompound extends Tag {
 			return ret;
 		}
 
+		@Override
+		protected Tag parsePayload(String name, DataInput in, TagProjection proj) throws IOException {
+			if (proj.isAll()) return parsePayload(name, in);
+			TagCompound ret = new TagCompound(name);
+			byte tagid;
+			while ((tagid = in.readByte()) != 0) {
+				Tag.Parser p = Tag.getTagParser(tagid);
+				if (p == null) throw new IllegalStateException("No parser for tag id " + tagid);
+				String cname = p.tagsHaveNames() ? Tag.readName(in) : "";
+				TagProjection cproj = proj.child(cname);
+				if (cproj == null) {
+					p.skipPayload(in);
+				} else {
+					ret.add(p.parsePayload(cname, in, cproj));
+				}
+			}
+			return ret;
+		}
+
+		@Override
+		protected void skipPayload(DataInput in) throws IOException {
+			byte tagid;
+			while ((tagid = in.readByte()) != 0) {
+				Tag.Parser p = Tag.getTagParser(tagid);
+				if (p == null) throw new IllegalStateException("No parser for tag id " + tagid);
+				if (p.tagsHaveNames()) Tag.skipFully(in, in.readUnsignedShort());
+				p.skipPayload(in);
+			}
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return null;
@@ -36,20 +67,254 @@ public class TagCompound extends Tag {
 
 	}
 
-	private Map<String, Tag> m_data;
+	/**
+	 * Children by name, kept in insertion order in small arrays. Most compounds have only a few children, which are
+	 * found faster by scanning (names are usually interned, so mostly compared by reference) than by hashing; a hash
+	 * index is built only for compounds with more children than that.
+	 */
+	private static final class ChildMap implements Iterable<Tag> {
+
+		private static final int INDEX_THRESHOLD = 8;
+		private static final String[] NO_NAMES = new String[0];
+		private static final Tag[] NO_TAGS = new Tag[0];
+
+		private String[] m_names = NO_NAMES;
+		private Tag[] m_tags = NO_TAGS;
+		private int m_size = 0;
+		// built on demand, for large compounds
+		private HashMap<String, Integer> m_index = null;
+
+		public int size() {
+			return m_size;
+		}
+
+		private int indexOf(String name) {
+			if (m_size > INDEX_THRESHOLD) {
+				if (m_index == null) {
+					m_index = new HashMap<String, Integer>(m_size * 2);
+					for (int i = 0; i < m_size; i++) {
+						m_index.put(m_names[i], i);
+					}
+				}
+				Integer i = m_index.get(name);
+				return i == null ? -1 : i;
+			}
+			for (int i = 0; i < m_size; i++) {
+				if (m_names[i].equals(name)) return i;
+			}
+			return -1;
+		}
+
+		public Tag get(String name) {
+			int i = indexOf(name);
+			return i < 0 ? null : m_tags[i];
+		}
+
+		public boolean containsKey(String name) {
+			return indexOf(name) >= 0;
+		}
+
+		public Tag put(String name, Tag tag) {
+			int i = indexOf(name);
+			if (i >= 0) {
+				Tag old = m_tags[i];
+				m_tags[i] = tag;
+				return old;
+			}
+			if (m_size == m_names.length) {
+				int cap = Math.max(4, m_size * 2);
+				String[] names = new String[cap];
+				Tag[] tags = new Tag[cap];
+				System.arraycopy(m_names, 0, names, 0, m_size);
+				System.arraycopy(m_tags, 0, tags, 0, m_size);
+				m_names = names;
+				m_tags = tags;
+			}
+			m_names[m_size] = name;
+			m_tags[m_size] = tag;
+			if (m_index != null) m_index.put(name, m_size);
+			m_size++;
+			return null;
+		}
+
+		public Tag remove(String name) {
+			int i = indexOf(name);
+			if (i < 0) return null;
+			Tag old = m_tags[i];
+			removeAt(i);
+			return old;
+		}
+
+		private void removeAt(int i) {
+			System.arraycopy(m_names, i + 1, m_names, i, m_size - i - 1);
+			System.arraycopy(m_tags, i + 1, m_tags, i, m_size - i - 1);
+			m_size--;
+			m_names[m_size] = null;
+			m_tags[m_size] = null;
+			m_index = null;
+		}
+
+		public void clear() {
+			m_names = NO_NAMES;
+			m_tags = NO_TAGS;
+			m_size = 0;
+			m_index = null;
+		}
+
+		public Iterable<Tag> values() {
+			return this;
+		}
+
+		@Override
+		public Iterator<Tag> iterator() {
+			return new Iterator<Tag>() {
+
+				private int m_next = 0;
+				private boolean m_canremove = false;
+
+				@Override
+				public boolean hasNext() {
+					return m_next < m_size;
+				}
+
+				@Override
+				public Tag next() {
+					if (m_next >= m_size) throw new NoSuchElementException();
+					m_canremove = true;
+					return m_tags[m_next++];
+				}
+
+				@Override
+				public void remove() {
+					if (!m_canremove) throw new IllegalStateException();
+					m_canremove = false;
+					removeAt(--m_next);
+				}
+
+			};
+		}
+
+		@Override
+		public int hashCode() {
+			// same as a HashMap<String, Tag> with the same contents
+			int h = 0;
+			for (int i = 0; i < m_size; i++) {
+				h += m_names[i].hashCode() ^ m_tags[i].hashCode();
+			}
+			return h;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof ChildMap)) return false;
+			ChildMap other = (ChildMap) obj;
+			if (m_size != other.m_size) return false;
+			// order doesn't matter
+			for (int i = 0; i < m_size; i++) {
+				if (!m_tags[i].equals(other.get(m_names[i]))) return false;
+			}
+			return true;
+		}
+
+	}
+
+	private ChildMap m_data;
+
+	// lazy mode: children that haven't been parsed yet, as offsets of their tag ids in m_source
+	private ByteBuffer m_source = null;
+	private Map<String, Integer> m_pending = null;
 
 	public TagCompound(String name_) {
 		super(TAG_ID, name_);
-		m_data = new HashMap<String, Tag>();
+		m_data = new ChildMap();
+	}
+
+	/**
+	 * Construct a lazy TagCompound from the payload of a compound in a buffer. Only the names and offsets of the
+	 * children are read; each child is parsed when it is first needed. Child compounds are lazy too. The contents of
+	 * the buffer must not change while there are unparsed children.
+	 * 
+	 * @param name_
+	 *            The name for this tag.
+	 * @param source_
+	 *            The buffer.
+	 * @param in
+	 *            Input positioned at the start of the payload in that buffer. It is left at the end of the payload.
+	 */
+	TagCompound(String name_, ByteBuffer source_, ByteBufferInput in) throws IOException {
+		this(name_);
+		m_source = source_;
+		m_pending = new HashMap<String, Integer>();
+		while (true) {
+			int offset = in.position();
+			byte tagid = in.readByte();
+			if (tagid == 0) break;
+			Tag.Parser p = Tag.getTagParser(tagid);
+			if (p == null) throw new IllegalStateException("No parser for tag id " + tagid);
+			String cname = p.tagsHaveNames() ? in.readName() : "";
+			if (m_pending.put(cname, offset) != null) throw new IOException("Duplicate tag name " + cname);
+			p.skipPayload(in);
+		}
+		if (m_pending.isEmpty()) {
+			m_pending = null;
+			m_source = null;
+		}
+	}
+
+	/**
+	 * Parse an unparsed child of a lazy compound.
+	 */
+	private void resolve(String tagname) {
+		if (m_pending == null) return;
+		Integer offset = m_pending.remove(tagname);
+		if (offset == null) return;
+		try {
+			ByteBuffer b = m_source.duplicate();
+			b.position(offset);
+			ByteBufferInput in = new ByteBufferInput(b);
+			byte tagid = in.readByte();
+			Tag.Parser p = Tag.getTagParser(tagid);
+			String cname = p.tagsHaveNames() ? in.readName() : "";
+			if (tagid == TAG_ID) {
+				m_data.put(cname, new TagCompound(cname, m_source, in));
+			} else {
+				m_data.put(cname, p.parsePayload(cname, in));
+			}
+		} catch (IOException e) {
+			// it was valid enough to index
+			throw new IllegalStateException("Lazy parse of " + tagname + " failed.", e);
+		}
+		if (m_pending.isEmpty()) {
+			m_pending = null;
+			m_source = null;
+		}
+	}
+
+	/**
+	 * Parse all unparsed children of a lazy compound.
+	 */
+	private void resolveAll() {
+		while (m_pending != null) {
+			resolve(m_pending.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * @return True if this is a lazy compound with children that have not been parsed yet.
+	 */
+	public boolean isLazy() {
+		return m_pending != null;
 	}
 
 	@Override
 	public int size() {
-		return m_data.size();
+		return m_pending == null ? m_data.size() : m_data.size() + m_pending.size();
 	}
 
 	@Override
 	public Tag child(String tagname) {
+		resolve(tagname);
 		Tag tag = m_data.get(tagname);
 		if (tag == null) throw new NoSuchElementException("Bad tagname: " + tagname);
 		return tag;
@@ -70,6 +335,8 @@ public class TagCompound extends Tag {
 				Tag.class.cast(o);
 			}
 			// copy tags
+			m_pending = null;
+			m_source = null;
 			m_data.clear();
 			for (Object o : l) {
 				Tag tag = (Tag) o;
@@ -95,6 +362,7 @@ public class TagCompound extends Tag {
 	@Override
 	public void add(Tag tag) {
 		if (tag == null) throw new NullPointerException();
+		resolve(tag.name());
 		// don't allow overwriting already-existing tag of same name
 		if (m_data.containsKey(tag.name())) throw new IllegalArgumentException();
 		m_data.put(tag.name(), tag);
@@ -103,12 +371,15 @@ public class TagCompound extends Tag {
 	@Override
 	public Tag remove(String tagname) {
 		if (tagname == null) throw new NullPointerException();
+		resolve(tagname);
 		return m_data.remove(tagname);
 	}
 	
 	@Override
 	public Tag replace(String tagname, Tag tag) {
 		if (tagname == null || tag == null) throw new NullPointerException();
+		resolve(tagname);
+		resolve(tag.name());
 		if (tagname.equals(tag.name())) {
 			// replace tag of same name or just add
 			return m_data.put(tag.name(), tag);
@@ -123,16 +394,20 @@ public class TagCompound extends Tag {
 
 	@Override
 	public void clear() {
+		m_pending = null;
+		m_source = null;
 		m_data.clear();
 	}
 
 	@Override
 	public Iterator<Tag> iterator() {
+		resolveAll();
 		return m_data.values().iterator();
 	}
 
 	@Override
 	protected void writePayload(DataOutput out) throws IOException {
+		resolveAll();
 		for (Tag t : m_data.values()) {
 			t.write(out);
 		}
@@ -141,13 +416,14 @@ public class TagCompound extends Tag {
 
 	@Override
 	public String toString() {
-		return super.toString() + " size=" + m_data.size();
+		return super.toString() + " size=" + size();
 	}
 
 	@Override
 	public TagCompound clone() {
+		resolveAll();
 		TagCompound t = (TagCompound) super.clone();
-		t.m_data = new HashMap<String, Tag>();
+		t.m_data = new ChildMap();
 		for (Tag tag : this.m_data.values()) {
 			t.m_data.put(tag.name(), tag.clone());
 		}
@@ -158,6 +434,7 @@ public class TagCompound extends Tag {
 	public int hashCode() {
 		final int prime = 31;
 		int result = super.hashCode();
+		resolveAll();
 		result = prime * result + ((m_data == null) ? 0 : m_data.hashCode());
 		return result;
 	}
@@ -168,6 +445,8 @@ public class TagCompound extends Tag {
 		if (!super.equals(obj)) return false;
 		if (getClass() != obj.getClass()) return false;
 		TagCompound other = (TagCompound) obj;
+		resolveAll();
+		other.resolveAll();
 		if (m_data == null) {
 			if (other.m_data != null) return false;
 		} else if (!m_data.equals(other.m_data)) return false;
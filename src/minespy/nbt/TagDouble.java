@@ -21,6 +21,11 @@ public class TagDouble extends Tag {
 			return new TagDouble(name, val);
 		}
 
+		@Override
+		public int payloadSize() {
+			return 8;
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return Double.class;
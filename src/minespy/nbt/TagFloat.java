@@ -21,6 +21,11 @@ public class TagFloat extends Tag {
 			return new TagFloat(name, val);
 		}
 
+		@Override
+		public int payloadSize() {
+			return 4;
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return Float.class;
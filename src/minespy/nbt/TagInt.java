@@ -21,6 +21,11 @@ public class TagInt extends Tag {
 			return new TagInt(name, val);
 		}
 
+		@Override
+		public int payloadSize() {
+			return 4;
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return Integer.class;
@@ -23,10 +23,18 @@ public class TagIntArray extends Tag {
 			if (length < 1) throw new IOException("TAG_Int_Array (" + name + "): negative length.");
 			int[] data = null;
 			try {
-				data = new int[length];
+				data = Tag.getArrayAllocator().allocateInts(length);
 			} catch (OutOfMemoryError e) {
 				throw new IOException("TAG_Int_Array (" + name + "): unable to allocate space for " + length, e);
 			}
+			if (in instanceof ByteBufferInput) {
+				try {
+					((ByteBufferInput) in).readFully(data, 0, length);
+				} catch (EOFException e) {
+					throw new EOFException("TAG_Int_Array (" + name + "): read failed, 0 / " + length + " ints read.");
+				}
+				return new TagIntArray(name, data);
+			}
 			for (int i = 0; i < length; i++) {
 				try {
 					data[i] = in.readInt();
@@ -38,6 +46,13 @@ public class TagIntArray extends Tag {
 			return new TagIntArray(name, data);
 		}
 
+		@Override
+		protected void skipPayload(DataInput in) throws IOException {
+			int length = in.readInt();
+			if (length < 0) throw new IOException("TAG_Int_Array: negative length.");
+			Tag.skipFully(in, length * 4L);
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return int[].class;
@@ -114,6 +129,10 @@ public class TagIntArray extends Tag {
 	@Override
 	protected void writePayload(DataOutput out) throws IOException {
 		out.writeInt(m_data.length);
+		if (out instanceof ByteArrayDataOutput) {
+			((ByteArrayDataOutput) out).write(m_data, 0, m_data.length);
+			return;
+		}
 		for (int i = 0; i < m_data.length; i++) {
 			out.writeInt(m_data[i]);
 		}
@@ -2,6 +2,7 @@ package minespy.nbt;
 
 import java.io.DataInput;
 import java.io.DataOutput;
+import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -25,6 +26,51 @@ public class TagList extends Tag {
 				// list of TAG_End, wtf?
 				if (size != 0) throw new IOException("List of TAG_End detected, name=" + name + ", size=" + size);
 			}
+			if (size > 0) {
+				// numeric lists are kept as arrays
+				try {
+					switch (tagid) {
+					case TagDouble.TAG_ID: {
+						checkSize(name, in, size, 8);
+						double[] a = new double[size];
+						for (int i = 0; i < size; i++) {
+							a[i] = in.readDouble();
+						}
+						return new TagList(name, tagid, a);
+					}
+					case TagFloat.TAG_ID: {
+						checkSize(name, in, size, 4);
+						float[] a = new float[size];
+						for (int i = 0; i < size; i++) {
+							a[i] = in.readFloat();
+						}
+						return new TagList(name, tagid, a);
+					}
+					case TagLong.TAG_ID: {
+						checkSize(name, in, size, 8);
+						long[] a = new long[size];
+						for (int i = 0; i < size; i++) {
+							a[i] = in.readLong();
+						}
+						return new TagList(name, tagid, a);
+					}
+					case TagInt.TAG_ID: {
+						checkSize(name, in, size, 4);
+						int[] a = new int[size];
+						if (in instanceof ByteBufferInput) {
+							((ByteBufferInput) in).readFully(a, 0, size);
+						} else {
+							for (int i = 0; i < size; i++) {
+								a[i] = in.readInt();
+							}
+						}
+						return new TagList(name, tagid, a);
+					}
+					}
+				} catch (OutOfMemoryError e) {
+					throw new IOException("TAG_List (" + name + "): unable to allocate space for " + size);
+				}
+			}
 			TagList ret = new TagList(name, tagid);
 			if (size > 0) {
 				Tag.Parser parser = Tag.getTagParser(tagid);
@@ -35,6 +81,57 @@ public class TagList extends Tag {
 			return ret;
 		}
 
+		/**
+		 * Fail on a list that is longer than the rest of the input, before allocating an array for it.
+		 */
+		private static void checkSize(String name, DataInput in, int size, int element_bytes) throws IOException {
+			if (!(in instanceof ByteBufferInput)) return;
+			int remaining = ((ByteBufferInput) in).remaining();
+			if ((long) size * element_bytes > remaining) {
+				throw new EOFException("TAG_List (" + name + "): " + size + " elements but only " + remaining
+						+ " bytes left.");
+			}
+		}
+
+		@Override
+		protected Tag parsePayload(String name, DataInput in, TagProjection proj) throws IOException {
+			if (proj.isAll()) return parsePayload(name, in);
+			byte tagid = in.readByte();
+			int size = in.readInt();
+			if (tagid == 0) {
+				if (size != 0) throw new IOException("List of TAG_End detected, name=" + name + ", size=" + size);
+			}
+			TagList ret = new TagList(name, tagid);
+			if (size > 0) {
+				Tag.Parser parser = Tag.getTagParser(tagid);
+				TagProjection eproj = proj.element();
+				for (int i = 0; i < size; i++) {
+					if (eproj == null) {
+						parser.skipPayload(in);
+					} else {
+						ret.add(parser.parsePayload("", in, eproj));
+					}
+				}
+			}
+			return ret;
+		}
+
+		@Override
+		protected void skipPayload(DataInput in) throws IOException {
+			byte tagid = in.readByte();
+			int size = in.readInt();
+			if (size <= 0) return;
+			Tag.Parser parser = Tag.getTagParser(tagid);
+			if (parser.payloadSize() >= 0) {
+				// all the same size, skip them in one go
+				Tag.skipFully(in, (long) size * parser.payloadSize());
+			} else {
+				for (int i = 0; i < size; i++) {
+					parser.skipPayload(in);
+				}
+			}
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return null;
@@ -63,7 +160,10 @@ public class TagList extends Tag {
 	}
 
 	private final byte m_data_tagid;
+	// null while the list is backed by m_prim
 	private ListImpl m_data;
+	// a numeric list as parsed, as a double[], float[], long[] or int[], until its elements are needed as tags
+	private Object m_prim = null;
 
 	public TagList(String name_, byte data_tagid_) {
 		super(TAG_ID, name_);
@@ -71,14 +171,101 @@ public class TagList extends Tag {
 		m_data = new ListImpl(m_data_tagid);
 	}
 
+	/**
+	 * Construct a list of TAG_Double, TAG_Float, TAG_Long or TAG_Int backed by an array of the element values. The
+	 * array must not be modified afterwards.
+	 */
+	TagList(String name_, byte data_tagid_, Object prim_) {
+		super(TAG_ID, name_);
+		m_data_tagid = data_tagid_;
+		m_prim = prim_;
+	}
+
+	/**
+	 * @return The elements as tags, creating them if the list is backed by an array.
+	 */
+	private ListImpl data() {
+		if (m_prim != null) {
+			int size = primSize();
+			ListImpl l = new ListImpl(m_data_tagid);
+			l.ensureCapacity(size);
+			for (int i = 0; i < size; i++) {
+				l.add(Tag.wrap("", primGet(i)));
+			}
+			m_data = l;
+			m_prim = null;
+		}
+		return m_data;
+	}
+
+	private int primSize() {
+		if (m_prim instanceof double[]) return ((double[]) m_prim).length;
+		if (m_prim instanceof float[]) return ((float[]) m_prim).length;
+		if (m_prim instanceof long[]) return ((long[]) m_prim).length;
+		return ((int[]) m_prim).length;
+	}
+
+	/**
+	 * @return An element of the backing array, boxed like the payload of the equivalent tag.
+	 */
+	private Object primGet(int i) {
+		if (m_prim instanceof double[]) return ((double[]) m_prim)[i];
+		if (m_prim instanceof float[]) return ((float[]) m_prim)[i];
+		if (m_prim instanceof long[]) return ((long[]) m_prim)[i];
+		return ((int[]) m_prim)[i];
+	}
+
 	@Override
 	public int size() {
-		return m_data.size();
+		return m_prim != null ? primSize() : m_data.size();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T get(int i) {
+		if (m_prim != null) return (T) primGet(i);
+		return super.get(i);
+	}
+
+	@Override
+	public double getDouble(int i) {
+		if (m_prim instanceof double[]) return ((double[]) m_prim)[i];
+		if (m_prim instanceof float[]) return ((float[]) m_prim)[i];
+		if (m_prim instanceof long[]) return ((long[]) m_prim)[i];
+		if (m_prim instanceof int[]) return ((int[]) m_prim)[i];
+		return super.getDouble(i);
+	}
+
+	@Override
+	public float getFloat(int i) {
+		if (m_prim instanceof double[]) return (float) ((double[]) m_prim)[i];
+		if (m_prim instanceof float[]) return ((float[]) m_prim)[i];
+		if (m_prim instanceof long[]) return ((long[]) m_prim)[i];
+		if (m_prim instanceof int[]) return ((int[]) m_prim)[i];
+		return super.getFloat(i);
+	}
+
+	@Override
+	public long getLong(int i) {
+		if (m_prim instanceof double[]) return (long) ((double[]) m_prim)[i];
+		if (m_prim instanceof float[]) return (long) ((float[]) m_prim)[i];
+		if (m_prim instanceof long[]) return ((long[]) m_prim)[i];
+		if (m_prim instanceof int[]) return ((int[]) m_prim)[i];
+		return super.getLong(i);
+	}
+
+	@Override
+	public int getInt(int i) {
+		if (m_prim instanceof double[]) return (int) ((double[]) m_prim)[i];
+		if (m_prim instanceof float[]) return (int) ((float[]) m_prim)[i];
+		if (m_prim instanceof long[]) return (int) ((long[]) m_prim)[i];
+		if (m_prim instanceof int[]) return ((int[]) m_prim)[i];
+		return super.getInt(i);
 	}
 
 	@Override
 	public Tag child(int i) {
-		return m_data.get(i);
+		return data().get(i);
 	}
 
 	@Override
@@ -100,7 +287,8 @@ public class TagList extends Tag {
 				}
 			}
 			// copy tags
-			m_data.clear();
+			m_prim = null;
+			m_data = new ListImpl(m_data_tagid);
 			for (Object o : l) {
 				m_data.add((Tag) o);
 			}
@@ -127,19 +315,19 @@ public class TagList extends Tag {
 	@Override
 	public void add(int i, Tag tag) {
 		if (tag == null) throw new NullPointerException();
-		m_data.add(i, tag);
+		data().add(i, tag);
 	}
 
 	@Override
 	public void add(Tag tag) {
 		if (tag == null) throw new NullPointerException();
-		m_data.add(tag);
+		data().add(tag);
 	}
 
 	@Override
 	public Tag remove(int i) {
 		try {
-			return m_data.remove(i);
+			return data().remove(i);
 		} catch (IndexOutOfBoundsException e) {
 			return null;
 		}
@@ -149,41 +337,62 @@ public class TagList extends Tag {
 	public Tag replace(int i, Tag tag) {
 		if (tag == null) throw new NullPointerException();
 		if (i == size()) {
-			m_data.add(tag);
+			data().add(tag);
 			return null;
 		} else {
-			return m_data.set(i, tag);
+			return data().set(i, tag);
 		}
 	}
 
 	@Override
 	public void clear() {
-		m_data.clear();
+		m_prim = null;
+		m_data = new ListImpl(m_data_tagid);
 	}
 
 	@Override
 	public Iterator<Tag> iterator() {
-		return m_data.iterator();
+		return data().iterator();
 	}
 
 	@Override
 	protected void writePayload(DataOutput out) throws IOException {
 		out.writeByte(m_data_tagid);
-		out.writeInt(m_data.size());
-		for (Tag t : m_data) {
-			t.writePayload(out);
+		out.writeInt(size());
+		if (m_prim instanceof double[]) {
+			for (double d : (double[]) m_prim) {
+				out.writeDouble(d);
+			}
+		} else if (m_prim instanceof float[]) {
+			for (float f : (float[]) m_prim) {
+				out.writeFloat(f);
+			}
+		} else if (m_prim instanceof long[]) {
+			for (long l : (long[]) m_prim) {
+				out.writeLong(l);
+			}
+		} else if (m_prim instanceof int[]) {
+			for (int i : (int[]) m_prim) {
+				out.writeInt(i);
+			}
+		} else {
+			for (Tag t : m_data) {
+				t.writePayload(out);
+			}
 		}
 	}
 
 	@Override
 	public String toString() {
 		Tag.Parser p = Tag.getTagParser(m_data_tagid);
-		return super.toString() + " datatype=" + p.typeName() + "(" + p.tagID() + ")" + " size=" + m_data.size();
+		return super.toString() + " datatype=" + p.typeName() + "(" + p.tagID() + ")" + " size=" + size();
 	}
 
 	@Override
 	public TagList clone() {
 		TagList t = (TagList) super.clone();
+		// the backing array is never modified, so it can be shared
+		if (m_prim != null) return t;
 		t.m_data = new ListImpl(t.m_data_tagid);
 		for (Tag tag : this.m_data) {
 			t.m_data.add(tag.clone());
@@ -195,7 +404,7 @@ public class TagList extends Tag {
 	public int hashCode() {
 		final int prime = 31;
 		int result = super.hashCode();
-		result = prime * result + ((m_data == null) ? 0 : m_data.hashCode());
+		result = prime * result + data().hashCode();
 		result = prime * result + m_data_tagid;
 		return result;
 	}
@@ -206,9 +415,7 @@ public class TagList extends Tag {
 		if (!super.equals(obj)) return false;
 		if (getClass() != obj.getClass()) return false;
 		TagList other = (TagList) obj;
-		if (m_data == null) {
-			if (other.m_data != null) return false;
-		} else if (!m_data.equals(other.m_data)) return false;
+		if (!data().equals(other.data())) return false;
 		if (m_data_tagid != other.m_data_tagid) return false;
 		return true;
 	}
@@ -21,6 +21,11 @@ public class TagLong extends Tag {
 			return new TagLong(name, val);
 		}
 
+		@Override
+		public int payloadSize() {
+			return 8;
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return Long.class;
@@ -0,0 +1,112 @@
+package minespy.nbt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Selects parts of a tag to parse with <code>Tag.parse(DataInput, TagProjection)</code>. A projection is made from
+ * paths of child names separated by '/', relative to the tag being parsed. A path component can be a name, a set of
+ * names in braces (like <code>{Y,Blocks}</code>) or '*', which matches any child of a compound and is the only thing
+ * that matches the elements of a list. A tag at the end of a path is kept with all its children.<br>
+ * <br>
+ * For example, <code>TagProjection.of("Level/Sections/*&#47;{Y,Blocks}", "Level/HeightMap")</code> keeps the Y and
+ * Blocks tags of every section, and the height map. Projections are immutable and can be shared between threads.
+ */
+public final class TagProjection {
+
+	/** Projection that keeps everything. */
+	public static final TagProjection ALL = new TagProjection(null);
+
+	// marks a child with nothing selected in the cache
+	private static final TagProjection NONE = new TagProjection(new ArrayList<String[][]>());
+
+	// remaining path components, each an array of names or null for '*'; null for everything
+	private final List<String[][]> m_paths;
+	private final ConcurrentMap<String, TagProjection> m_children = new ConcurrentHashMap<String, TagProjection>();
+	private volatile TagProjection m_element = null;
+
+	private TagProjection(List<String[][]> paths_) {
+		m_paths = paths_;
+	}
+
+	/**
+	 * Make a projection from paths.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If a path is malformed.
+	 */
+	public static TagProjection of(String... paths) {
+		List<String[][]> parsed = new ArrayList<String[][]>();
+		for (String path : paths) {
+			if (path.isEmpty()) return ALL;
+			String[] parts = path.split("/");
+			String[][] comps = new String[parts.length][];
+			for (int i = 0; i < parts.length; i++) {
+				String part = parts[i].trim();
+				if (part.equals("*")) {
+					comps[i] = null;
+				} else if (part.startsWith("{") && part.endsWith("}")) {
+					comps[i] = part.substring(1, part.length() - 1).split("\\s*,\\s*");
+				} else if (part.isEmpty() || part.contains("{") || part.contains("}")) {
+					throw new IllegalArgumentException("Bad path component '" + part + "' in '" + path + "'.");
+				} else {
+					comps[i] = new String[] { part };
+				}
+			}
+			parsed.add(comps);
+		}
+		return new TagProjection(parsed);
+	}
+
+	/**
+	 * @return True if this selects the whole tag.
+	 */
+	public boolean isAll() {
+		return m_paths == null;
+	}
+
+	/**
+	 * @return The projection for a child of a compound, or null if the child is not selected.
+	 */
+	public TagProjection child(String name) {
+		if (m_paths == null) return this;
+		TagProjection p = m_children.get(name);
+		if (p == null) {
+			p = select(name);
+			TagProjection q = m_children.putIfAbsent(name, p);
+			if (q != null) p = q;
+		}
+		return p == NONE ? null : p;
+	}
+
+	/**
+	 * @return The projection for the elements of a list, or null if they are not selected.
+	 */
+	public TagProjection element() {
+		if (m_paths == null) return this;
+		TagProjection p = m_element;
+		if (p == null) {
+			p = select(null);
+			m_element = p;
+		}
+		return p == NONE ? null : p;
+	}
+
+	/**
+	 * Work out the projection for a child, or for list elements if <code>name</code> is null.
+	 */
+	private TagProjection select(String name) {
+		List<String[][]> sub = new ArrayList<String[][]>();
+		for (String[][] path : m_paths) {
+			String[] comp = path[0];
+			if (comp != null && (name == null || !Arrays.asList(comp).contains(name))) continue;
+			if (path.length == 1) return ALL;
+			sub.add(Arrays.copyOfRange(path, 1, path.length));
+		}
+		return sub.isEmpty() ? NONE : new TagProjection(sub);
+	}
+
+}
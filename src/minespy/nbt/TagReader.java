@@ -0,0 +1,159 @@
+package minespy.nbt;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming NBT reader. Instead of building tags like <code>Tag.parse()</code>, this reports what it reads to an
+ * <code>ITagVisitor</code>, and skips whatever the visitor is not interested in (using the registered tag parsers).
+ * Only the standard tag types can be visited.
+ */
+public class TagReader {
+
+	private TagReader() {
+
+	}
+
+	/**
+	 * Read one named tag (usually the root compound) and report it to a visitor.
+	 * 
+	 * @param in
+	 *            Stream to read from.
+	 * @param v
+	 *            The visitor.
+	 * @return False if an end tag (tag id 0) was read, true otherwise.
+	 * @throws IOException
+	 *             If the stream cannot be read or invalid data is encountered.
+	 */
+	public static boolean read(DataInput in, ITagVisitor v) throws IOException {
+		byte tagid = in.readByte();
+		if (tagid == 0) return false;
+		readPayload(tagid, Tag.readName(in), in, v);
+		return true;
+	}
+
+	/**
+	 * Read one named tag from a buffer, starting at its position, and report it to a visitor. On success, the position
+	 * of the buffer is moved to the end of the tag.
+	 * 
+	 * @param buf
+	 *            Buffer to read from.
+	 * @param v
+	 *            The visitor.
+	 * @return False if an end tag (tag id 0) was read, true otherwise.
+	 * @throws IOException
+	 *             If the end of the buffer is reached or invalid data is encountered.
+	 */
+	public static boolean read(ByteBuffer buf, ITagVisitor v) throws IOException {
+		ByteBufferInput in = new ByteBufferInput(buf);
+		boolean r = read(in, v);
+		buf.position(in.position());
+		return r;
+	}
+
+	private static void readPayload(byte tagid, String name, DataInput in, ITagVisitor v) throws IOException {
+		switch (tagid) {
+		case TagByte.TAG_ID:
+			v.visitByte(name, in.readByte());
+			break;
+		case TagShort.TAG_ID:
+			v.visitShort(name, in.readShort());
+			break;
+		case TagInt.TAG_ID:
+			v.visitInt(name, in.readInt());
+			break;
+		case TagLong.TAG_ID:
+			v.visitLong(name, in.readLong());
+			break;
+		case TagFloat.TAG_ID:
+			v.visitFloat(name, in.readFloat());
+			break;
+		case TagDouble.TAG_ID:
+			v.visitDouble(name, in.readDouble());
+			break;
+		case TagString.TAG_ID:
+			v.visitString(name, in.readUTF());
+			break;
+		case TagByteArray.TAG_ID: {
+			int length = readLength(name, in);
+			if (v.visitArray(name, tagid, length)) {
+				byte[] data = Tag.getArrayAllocator().allocateBytes(length);
+				in.readFully(data);
+				v.visitByteArray(name, data);
+			} else {
+				Tag.skipFully(in, length);
+			}
+			break;
+		}
+		case TagIntArray.TAG_ID: {
+			int length = readLength(name, in);
+			if (v.visitArray(name, tagid, length)) {
+				int[] data = Tag.getArrayAllocator().allocateInts(length);
+				if (in instanceof ByteBufferInput) {
+					((ByteBufferInput) in).readFully(data, 0, length);
+				} else {
+					for (int i = 0; i < length; i++) {
+						data[i] = in.readInt();
+					}
+				}
+				v.visitIntArray(name, data);
+			} else {
+				Tag.skipFully(in, (long) length * 4);
+			}
+			break;
+		}
+		case TagList.TAG_ID: {
+			byte elemid = in.readByte();
+			int length = in.readInt();
+			if (length < 0) throw new IOException("TAG_List (" + name + "): negative length.");
+			if (elemid == 0 && length != 0) {
+				throw new IOException("List of TAG_End detected, name=" + name + ", size=" + length);
+			}
+			if (v.visitList(name, elemid, length)) {
+				for (int i = 0; i < length; i++) {
+					readPayload(elemid, "", in, v);
+				}
+				v.endList(name);
+			} else if (length > 0) {
+				Tag.Parser p = parser(elemid);
+				if (p.payloadSize() >= 0) {
+					Tag.skipFully(in, (long) length * p.payloadSize());
+				} else {
+					for (int i = 0; i < length; i++) {
+						p.skipPayload(in);
+					}
+				}
+			}
+			break;
+		}
+		case TagCompound.TAG_ID:
+			if (v.visitCompound(name)) {
+				byte childid;
+				while ((childid = in.readByte()) != 0) {
+					readPayload(childid, Tag.readName(in), in, v);
+				}
+				v.endCompound(name);
+			} else {
+				parser(tagid).skipPayload(in);
+			}
+			break;
+		default:
+			throw new IOException("Unknown tag id " + tagid + " (" + name + ").");
+		}
+	}
+
+	private static Tag.Parser parser(byte tagid) throws IOException {
+		Tag.Parser p = tagid > 0 ? Tag.getTagParser(tagid) : null;
+		if (p == null) throw new IOException("Unknown tag id " + tagid + ".");
+		return p;
+	}
+
+	private static int readLength(String name, DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) throw new IOException("Array (" + name + "): negative length.");
+		return length;
+	}
+
+}
@@ -21,6 +21,11 @@ public class TagShort extends Tag {
 			return new TagShort(name, val);
 		}
 
+		@Override
+		public int payloadSize() {
+			return 2;
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return Short.class;
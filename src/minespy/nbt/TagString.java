@@ -21,6 +21,11 @@ public class TagString extends Tag {
 			return new TagString(name, val);
 		}
 
+		@Override
+		protected void skipPayload(DataInput in) throws IOException {
+			Tag.skipFully(in, in.readUnsignedShort());
+		}
+
 		@Override
 		public Class<?> payloadClass() {
 			return String.class;
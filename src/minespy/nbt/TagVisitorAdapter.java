@@ -0,0 +1,78 @@
+package minespy.nbt;
+
+/**
+ * ITagVisitor that visits everything and does nothing with it. Extend this and override only what is needed.
+ */
+public class TagVisitorAdapter implements ITagVisitor {
+
+	@Override
+	public boolean visitCompound(String name) {
+		return true;
+	}
+
+	@Override
+	public void endCompound(String name) {
+
+	}
+
+	@Override
+	public boolean visitList(String name, byte tagid, int length) {
+		return true;
+	}
+
+	@Override
+	public void endList(String name) {
+
+	}
+
+	@Override
+	public void visitByte(String name, byte value) {
+
+	}
+
+	@Override
+	public void visitShort(String name, short value) {
+
+	}
+
+	@Override
+	public void visitInt(String name, int value) {
+
+	}
+
+	@Override
+	public void visitLong(String name, long value) {
+
+	}
+
+	@Override
+	public void visitFloat(String name, float value) {
+
+	}
+
+	@Override
+	public void visitDouble(String name, double value) {
+
+	}
+
+	@Override
+	public void visitString(String name, String value) {
+
+	}
+
+	@Override
+	public boolean visitArray(String name, byte tagid, int length) {
+		return true;
+	}
+
+	@Override
+	public void visitByteArray(String name, byte[] value) {
+
+	}
+
+	@Override
+	public void visitIntArray(String name, int[] value) {
+
+	}
+
+}